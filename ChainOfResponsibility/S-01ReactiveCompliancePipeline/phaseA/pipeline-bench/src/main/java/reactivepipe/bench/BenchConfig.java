@@ -0,0 +1,22 @@
+package reactivepipe.bench;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactivepipe.config.StageProperties;
+import reactivepipe.database.Activity;
+import reactivepipe.database.ResultStore;
+import reactivepipe.database.WriteAheadLog;
+import reactivepipe.metrics.PipelineMetrics;
+
+// the pipeline's stores and metrics without the web layer and without the sleeping handlers
+@Configuration
+@Import({StageProperties.class, PipelineMetrics.class, Activity.class, ResultStore.class, WriteAheadLog.class})
+public class BenchConfig {
+
+    @Bean
+    public MeterRegistry meterRegistry() {return new SimpleMeterRegistry();}
+}
@@ -0,0 +1,74 @@
+package reactivepipe.bench;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+final class BenchSupport {
+    // value of every property set for the current trial before it was set (null when there was none)
+    private static final Map<String, String> previous = new HashMap<>();
+
+    private BenchSupport() {}
+
+    // properties are read through the Environment, system properties are part of it
+    static AnnotationConfigApplicationContext context(String mode, String queue, List<String> stages) {
+        set("pipeline.stage.mode", mode);
+        for(String stage : stages) {
+            set("pipeline.stage." + stage + ".queue", queue);
+            // the adaptive limit starts wide open so the benchmark threads are never rejected
+            set("pipeline.stage." + stage + ".limit.initial", "1000");
+            set("pipeline.stage." + stage + ".limit.max", "1000");
+        }
+        return new AnnotationConfigApplicationContext(BenchConfig.class);
+    }
+
+    // called from every tear down, with -f 0 all @Param combinations share one JVM and would see each other's settings
+    static void restoreProperties() {
+        previous.forEach((key, value) -> {
+            if(value == null)
+                System.clearProperty(key);
+            else
+                System.setProperty(key, value);
+        });
+        previous.clear();
+    }
+
+    private static void set(String key, String value) {
+        if(!previous.containsKey(key))
+            previous.put(key, System.getProperty(key));
+        System.setProperty(key, value);
+    }
+
+    // fixed: the WORKER pools, virtual: thread per task, direct: callbacks run on the completing thread
+    static Executor executor(String type) {
+        switch(type) {
+            case "virtual":
+                try {
+                    return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+                } catch(ReflectiveOperationException e) {
+                    return Executors.newCachedThreadPool();
+                }
+            case "direct":
+                return Runnable::run;
+            default:
+                return Executors.newFixedThreadPool(2);
+        }
+    }
+
+    static void shutdown(Executor executor) {
+        if(executor instanceof ExecutorService service)
+            service.shutdownNow();
+    }
+
+    // WORKER stages block in take() on a non-daemon thread, interrupting them lets the forked JVM exit
+    static void stopWorkers() {
+        Thread.getAllStackTraces().keySet().stream()
+                .filter(t -> t.getName().endsWith("-worker"))
+                .forEach(Thread::interrupt);
+    }
+}
@@ -0,0 +1,53 @@
+package reactivepipe.bench;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+
+import lombok.Getter;
+import lombok.Setter;
+import reactivepipe.config.StageProperties;
+import reactivepipe.data.Data;
+import reactivepipe.data.QueueStatus;
+import reactivepipe.data.StateData;
+import reactivepipe.database.Activity;
+import reactivepipe.metrics.PipelineMetrics;
+import reactivepipe.model.AbstractQueue;
+import reactivepipe.model.Handler;
+
+// stage without work, whatever is measured through it is the cost of the queue, the executor hops and the callbacks
+@Getter
+@Setter
+public class NoopHandler extends AbstractQueue implements Handler {
+    private final String handlerID;
+    private final Executor executor;
+    private final Activity activity;
+
+    private BiConsumer<String, Data> callback;
+    private BiConsumer<String, List<Data>> batchCallback;
+
+    public NoopHandler(String handlerID, Executor executor, Activity activity) {
+        this.handlerID = handlerID;
+        this.executor = executor;
+        this.activity = activity;
+    }
+
+    public void start(StageProperties stageProperties, PipelineMetrics pipelineMetrics) {
+        startStage(stageProperties, pipelineMetrics);
+    }
+
+    @Override public void updateState(StateData stateData) {
+        activity.insertOrUpdate(stateData.getTransactionID(), QueueStatus.DONE);
+    }
+
+    @Override public CompletableFuture<Data> performOperation(Data inp) {return CompletableFuture.completedFuture(inp);}
+
+    @Override public CompletableFuture<List<Data>> performBatch(List<Data> batch) {return CompletableFuture.completedFuture(batch);}
+
+    @Override public void setCallback(BiConsumer<String, Data> c) {this.callback = c;}
+
+    @Override public void setBatchCallback(BiConsumer<String, List<Data>> c) {this.batchCallback = c;}
+
+    @Override public String getHandlerID() {return this.handlerID;}
+}
@@ -0,0 +1,108 @@
+package reactivepipe.bench;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import reactivepipe.config.StageProperties;
+import reactivepipe.data.Data;
+import reactivepipe.database.Activity;
+import reactivepipe.database.ResultStore;
+import reactivepipe.database.WriteAheadLog;
+import reactivepipe.metrics.PipelineMetrics;
+import reactivepipe.model.Handler;
+import reactivepipe.model.StageGraph;
+import reactivepipe.service.Orchestrator;
+
+// the full auth -> kyc/amt -> pay run through the Orchestrator with no-op stages, as a chain or as the fan-out/join graph
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineBenchmark {
+    private static final List<String> STAGES = List.of("auth", "kyc", "amt", "pay");
+
+    @Param({"worker", "virtual"}) public String mode;
+    @Param({"linked", "array", "mpsc"}) public String queue;
+    @Param({"fixed", "virtual", "direct"}) public String executor;
+    @Param({"chain", "dag"}) public String graph;
+
+    private AnnotationConfigApplicationContext context;
+    private final List<Executor> executors = new ArrayList<>();
+    private Orchestrator orchestrator;
+    private final AtomicLong ids = new AtomicLong();
+
+    @Setup
+    public void setup() {
+        context = BenchSupport.context(mode, queue, STAGES);
+        Activity activity = context.getBean(Activity.class);
+        Map<String, Handler> handlerMap = new HashMap<>();
+        List<NoopHandler> handlers = new ArrayList<>();
+        for(String stage : STAGES) {
+            Executor stageExecutor = BenchSupport.executor(executor);
+            executors.add(stageExecutor);
+            NoopHandler handler = new NoopHandler(stage, stageExecutor, activity);
+            handlerMap.put(stage, handler);
+            handlers.add(handler);
+        }
+        orchestrator = new Orchestrator();
+        orchestrator.setLanes(List.of(handlerMap));
+        orchestrator.setStageGraph(new StageGraph("auth", edges()));
+        orchestrator.setResultStore(context.getBean(ResultStore.class));
+        orchestrator.setActivity(activity);
+        orchestrator.setWal(context.getBean(WriteAheadLog.class));
+        orchestrator.initCallbacks();
+        handlers.forEach(h -> h.start(context.getBean(StageProperties.class), context.getBean(PipelineMetrics.class)));
+    }
+
+    private Map<String, List<String>> edges() {
+        Map<String, List<String>> edges = new HashMap<>();
+        if("dag".equals(graph)) {
+            edges.put("auth", List.of("kyc", "amt"));
+            edges.put("kyc", List.of("pay"));
+            edges.put("amt", List.of("pay"));
+        } else {
+            edges.put("auth", List.of("kyc"));
+            edges.put("kyc", List.of("amt"));
+            edges.put("amt", List.of("pay"));
+        }
+        edges.put("pay", List.of());
+        edges.put("stop", List.of());
+        return edges;
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchSupport.stopWorkers();
+        executors.forEach(BenchSupport::shutdown);
+        context.close();
+        BenchSupport.restoreProperties();
+    }
+
+    @Benchmark
+    public Data fullChain() {
+        Data data = new Data();
+        data.setTransactionID("bench" + ids.incrementAndGet());
+        return orchestrator.startPipeline(data).join();
+    }
+}
@@ -0,0 +1,76 @@
+package reactivepipe.bench;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import reactivepipe.config.StageProperties;
+import reactivepipe.data.Data;
+import reactivepipe.database.Activity;
+import reactivepipe.metrics.PipelineMetrics;
+
+// one stage: enqueue -> queue -> performOperation -> executor hop -> callback, throughput with -t N, latency from the sample mode
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StageHandoffBenchmark {
+    @Param({"worker", "virtual"}) public String mode;
+    @Param({"linked", "array", "mpsc"}) public String queue;
+    @Param({"fixed", "virtual", "direct"}) public String executor;
+
+    private AnnotationConfigApplicationContext context;
+    private Executor stageExecutor;
+    private NoopHandler handler;
+    private final Map<String, CompletableFuture<Data>> waiting = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+
+    @Setup
+    public void setup() {
+        context = BenchSupport.context(mode, queue, List.of("bench"));
+        stageExecutor = BenchSupport.executor(executor);
+        handler = new NoopHandler("bench", stageExecutor, context.getBean(Activity.class));
+        // completes the caller's future, "stop" (a rejection) completes it just the same
+        handler.setCallback((id, data) -> waiting.remove(data.getTransactionID()).complete(data));
+        handler.setBatchCallback((id, batch) -> batch.forEach(data -> waiting.remove(data.getTransactionID()).complete(data)));
+        handler.start(context.getBean(StageProperties.class), context.getBean(PipelineMetrics.class));
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchSupport.stopWorkers();
+        BenchSupport.shutdown(stageExecutor);
+        context.close();
+        BenchSupport.restoreProperties();
+    }
+
+    @Benchmark
+    public Data handoff() {
+        Data data = new Data();
+        data.setTransactionID("bench" + ids.incrementAndGet());
+        CompletableFuture<Data> done = new CompletableFuture<>();
+        waiting.put(data.getTransactionID(), done);
+        handler.enqueue(data);
+        return done.join();
+    }
+}
@@ -1,23 +1,36 @@
 package reactivepipe.api;
 
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import jakarta.servlet.http.HttpServletRequest;
 import reactivepipe.data.Data;
 import reactivepipe.database.Activity;
+import reactivepipe.database.ResultStore;
 import reactivepipe.dto.Request;
 import reactivepipe.dto.Response;
-import reactivepipe.service.Orchestrator;
+import reactivepipe.model.Piping;
+import reactivepipe.service.BulkIngestor;
+import reactivepipe.service.ResultPublisher;
+import reactivepipe.service.Simulator;
 import reactivepipe.utils.Serializer;
 
 @RestController
@@ -25,8 +38,12 @@ import reactivepipe.utils.Serializer;
 public class Controller {
 
     @Autowired private Serializer serializer;
-    @Autowired private Orchestrator orchestrator;
+    @Autowired private Piping orchestrator;
     @Autowired private Activity activity;
+    @Autowired private ResultStore resultStore;
+    @Autowired private ResultPublisher publisher;
+    @Autowired private BulkIngestor bulkIngestor;
+    @Autowired private Simulator simulator;
 
     @PostMapping("/transaction")
     public ResponseEntity<Object> createTransaction(@RequestBody Request req) {
@@ -34,11 +51,21 @@ public class Controller {
         String transactionID = serializer.generateTransactionID();
         data.setTransactionID(transactionID);
         data.setAmount(req.getAmount());
-        orchestrator.startPipeline(data);
+        // only a full result store fails the future before the call returns
+        if(orchestrator.startPipeline(data).isCompletedExceptionally())
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("transactionID", transactionID, "error", "too many transactions held"));
         Response res = new Response(transactionID, "http://localhost:8000/pipeline/status/"+transactionID, "http://localhost:8000/pipeline/result/"+transactionID);
         return ResponseEntity.ok().body(res);
     }
 
+    // one request line per transaction ({"amount":10}), answered line by line with the ids and then the completions
+    @PostMapping(value = "/transactions", consumes = MediaType.APPLICATION_NDJSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> createTransactions(HttpServletRequest request) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(out -> bulkIngestor.ingest(request.getInputStream(), out));
+    }
+
     @GetMapping("/status/{id}")
     public ResponseEntity<Object> getStatus(@PathVariable String id) {
         var status = activity.get(id);
@@ -49,7 +76,7 @@ public class Controller {
 
     @GetMapping("/result/{id}")
     public ResponseEntity<Object> getResult(@PathVariable String id) {
-        CompletableFuture<Data> f = orchestrator.getFutureMap().get(id);
+        CompletableFuture<Data> f = resultStore.get(id);
         if(f == null)
             return ResponseEntity.notFound().build();
         if(!f.isDone()) {
@@ -60,6 +87,7 @@ public class Controller {
         }
         try {
             Data result = f.get();
+            resultStore.markFetched(id);
             return ResponseEntity.ok(Map.of(
                     "transactionId", id,
                     "status", "COMPLETED",
@@ -68,12 +96,42 @@ public class Controller {
                         "logs", result.getLogs()
                     )
             ));
-        } catch (InterruptedException | ExecutionException e) {
-            return ResponseEntity.internalServerError()
-                    .body(Map.of("error", e.getMessage()));
+        } catch (CancellationException e) {
+            // replaced by a newer registration of the same id, this result is gone
+            return ResponseEntity.status(HttpStatus.GONE).body(Map.of("transactionID", id, "error", e.getMessage()));
+        } catch (ExecutionException e) {
+            resultStore.markFetched(id);
+            // in flight past pipeline.results.in-flight-ttl-ms, anything else failed inside a stage
+            HttpStatus status = e.getCause() instanceof TimeoutException ? HttpStatus.GATEWAY_TIMEOUT : HttpStatus.INTERNAL_SERVER_ERROR;
+            return ResponseEntity.status(status).body(Map.of("transactionID", id, "error", String.valueOf(e.getCause().getMessage())));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();     // not reached, the future is done
+            return ResponseEntity.internalServerError().body(Map.of("transactionID", id, "error", "interrupted"));
         }
     }
 
+    // push variant of /status and /result: stage transitions followed by the final result, no polling
+    @GetMapping(value = "/stream/{id}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamResult(@PathVariable String id) {
+        return publisher.follow(List.of(id));
+    }
+
+    // multiplexed, one connection follows every transaction in ?ids=a,b,c
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamResults(@RequestParam List<String> ids) {
+        return publisher.follow(ids);
+    }
+
+    // virtual-time run of the configured stages with Poisson arrivals at ?rate per second, nothing touches the live pipeline
+    @PostMapping("/simulate")
+    public ResponseEntity<Object> simulate(@RequestParam(defaultValue = "100000") int transactions,
+                                           @RequestParam(defaultValue = "1") double rate,
+                                           @RequestParam(defaultValue = "42") long seed) {
+        if(transactions <= 0 || transactions > Simulator.MAX_TRANSACTIONS || rate <= 0)
+            return ResponseEntity.badRequest().body(Map.of("error", "transactions must be in 1.." + Simulator.MAX_TRANSACTIONS + " and rate positive"));
+        return ResponseEntity.ok(simulator.run(transactions, rate, seed));
+    }
+
     @GetMapping("/all")
     public ResponseEntity<?> allStates() {
         return ResponseEntity.ok(activity.viewAll());
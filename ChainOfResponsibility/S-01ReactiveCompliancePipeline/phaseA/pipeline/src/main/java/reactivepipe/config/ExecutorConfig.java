@@ -1,23 +1,92 @@
 package reactivepipe.config;
 
+import java.lang.reflect.Method;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import reactivepipe.data.StageMode;
+
 @Configuration
 public class ExecutorConfig {
+    private static final Logger log = LoggerFactory.getLogger(ExecutorConfig.class);
+    static final int AUTH_THREADS = 3, KYC_THREADS = 3, PAYMENT_THREADS = 2, AMOUNT_THREADS = 2;
+    // platform threads per core a VIRTUAL stage may use on a runtime without virtual threads
+    static final int FALLBACK_THREADS_PER_CPU = 4;
+    // looked up reflectively so the module still compiles against JDK 17 (the java.version of the build), null there
+    private static final Method VIRTUAL_EXECUTOR = virtualExecutorFactory();
 
     @Bean("authExecutor")
-    public ExecutorService assignThreadsToAuth() {return Executors.newFixedThreadPool(3);}
+    public ExecutorService assignThreadsToAuth(StageProperties stage, MeterRegistry registry) {return create(stage, registry, "authExecutor", "auth", 0);}
 
     @Bean("kycExecutor")
-    public ExecutorService assignThreadsToKyc() {return Executors.newFixedThreadPool(3);}
+    public ExecutorService assignThreadsToKyc(StageProperties stage, MeterRegistry registry) {return create(stage, registry, "kycExecutor", "kyc", 0);}
 
     @Bean("paymentExecutor")
-    public ExecutorService assignThreadsToPayment() {return Executors.newFixedThreadPool(2);}
+    public ExecutorService assignThreadsToPayment(StageProperties stage, MeterRegistry registry) {return create(stage, registry, "paymentExecutor", "pay", 0);}
 
     @Bean("amountExecutor")
-    public ExecutorService assignThreadsToAmount() {return Executors.newFixedThreadPool(2);}
+    public ExecutorService assignThreadsToAmount(StageProperties stage, MeterRegistry registry) {return create(stage, registry, "amountExecutor", "amt", 0);}
+
+    // pool size behind a stage in WORKER mode, what the Simulator models as the number of servers
+    public static int threads(String handlerID) {
+        switch(handlerID) {
+            case "auth": return AUTH_THREADS;
+            case "kyc": return KYC_THREADS;
+            case "amt": return AMOUNT_THREADS;
+            case "pay": return PAYMENT_THREADS;
+            default: return 1;
+        }
+    }
+
+    // monitored so the time a task waits inside the pool (executor.idle) is told apart from its execution time,
+    // the beans above serve lane 0 and HandlerConfig creates one pool per stage for every further lane
+    static ExecutorService create(StageProperties stage, MeterRegistry registry, String name, String handlerID, int lane) {
+        ExecutorService executor = stage.getMode() == StageMode.VIRTUAL ? virtualThreadExecutor(name, stage.concurrency(handlerID)) : Executors.newFixedThreadPool(threads(handlerID));
+        return ExecutorServiceMetrics.monitor(registry, executor, name, Tags.of("lane", String.valueOf(lane)));
+    }
+
+    // whether VIRTUAL mode really gets a thread per operation, otherwise the stages are held to fallbackConcurrency()
+    static boolean virtualThreadsAvailable() {
+        return VIRTUAL_EXECUTOR != null;
+    }
+
+    static int fallbackConcurrency() {
+        return FALLBACK_THREADS_PER_CPU * Runtime.getRuntime().availableProcessors();
+    }
+
+    private static Method virtualExecutorFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch(NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService virtualThreadExecutor(String name, int concurrency) {
+        if(VIRTUAL_EXECUTOR != null) {
+            try {
+                return (ExecutorService) VIRTUAL_EXECUTOR.invoke(null);
+            } catch(ReflectiveOperationException e) {
+                throw new IllegalStateException("Cannot create the virtual thread executor of " + name, e);
+            }
+        }
+        // runtime without virtual threads: one platform thread per operation up to the stage's concurrency,
+        // which StageProperties already capped at a few per core, idle ones exit
+        log.warn("Virtual threads are not available on Java {}, {} falls back to a pool of at most {} platform threads",
+                Runtime.version().feature(), name, concurrency);
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(concurrency, concurrency, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
 }
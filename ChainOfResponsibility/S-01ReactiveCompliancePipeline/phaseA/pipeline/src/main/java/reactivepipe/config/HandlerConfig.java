@@ -1,8 +1,12 @@
 package reactivepipe.config;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -10,7 +14,10 @@ import reactivepipe.core.AmountHandler;
 import reactivepipe.core.AuthHandler;
 import reactivepipe.core.KycHandler;
 import reactivepipe.core.PayHandler;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactivepipe.model.AbstractQueue;
 import reactivepipe.model.Handler;
+import reactivepipe.model.StageGraph;
 
 @Configuration
 public class HandlerConfig {
@@ -25,14 +32,45 @@ public class HandlerConfig {
         return mp;
     }
 
+    // lane 0 is the handlerMap above, every further lane gets its own handlers, queues, worker threads and pools
+    @Bean("lanes")
+    public List<Map<String, Handler>> createLanes(@Qualifier("handlerMap") Map<String, Handler> handlerMap, StageProperties stage,
+                                                  MeterRegistry registry, AutowireCapableBeanFactory factory) {
+        List<Map<String, Handler>> lanes = new ArrayList<>();
+        lanes.add(handlerMap);
+        for(int lane = 1; lane < stage.getLanes(); lane++) {
+            Map<String, Handler> mp = new HashMap<>();
+            mp.put("auth", start(factory, new AuthHandler(ExecutorConfig.create(stage, registry, "authExecutor", "auth", lane)), lane));
+            mp.put("kyc", start(factory, new KycHandler(ExecutorConfig.create(stage, registry, "kycExecutor", "kyc", lane)), lane));
+            mp.put("amt", start(factory, new AmountHandler(ExecutorConfig.create(stage, registry, "amountExecutor", "amt", lane)), lane));
+            mp.put("pay", start(factory, new PayHandler(ExecutorConfig.create(stage, registry, "paymentExecutor", "pay", lane)), lane));
+            lanes.add(mp);
+        }
+        return lanes;
+    }
+
+    // same wiring as the singleton handlers get: autowired fields, then @PostConstruct starts the stage in its lane
+    private Handler start(AutowireCapableBeanFactory factory, AbstractQueue handler, int lane) {
+        handler.setLane(lane);
+        factory.autowireBean(handler);
+        factory.initializeBean(handler, ((Handler) handler).getHandlerID() + "Handler-" + lane);
+        return (Handler) handler;
+    }
+
+    // kyc and amt are independent, both start once auth is done and pay joins on the two of them
     @Bean("nextMap")
-    public Map<String, String> createNextMap() {
-        Map<String, String> map = new HashMap<>();
-        map.put("auth", "kyc");
-        map.put("kyc", "amt");
-        map.put("amt", "pay");
-        map.put("pay", null);
-        map.put("stop", null);
+    public Map<String, List<String>> createNextMap() {
+        Map<String, List<String>> map = new HashMap<>();
+        map.put("auth", List.of("kyc", "amt"));
+        map.put("kyc", List.of("pay"));
+        map.put("amt", List.of("pay"));
+        map.put("pay", List.of());
+        map.put("stop", List.of());
         return map;
     }
+
+    @Bean("stageGraph")
+    public StageGraph createStageGraph(@Qualifier("nextMap") Map<String, List<String>> nextMap) {
+        return new StageGraph("auth", nextMap);
+    }
 }
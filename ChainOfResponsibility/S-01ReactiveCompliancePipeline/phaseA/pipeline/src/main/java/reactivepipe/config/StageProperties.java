@@ -0,0 +1,85 @@
+package reactivepipe.config;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import reactivepipe.data.PipelineEngine;
+import reactivepipe.data.QueueType;
+import reactivepipe.data.StageMode;
+import reactivepipe.model.AdaptiveLimiter;
+import reactivepipe.model.LatencyModel;
+
+@Component
+public class StageProperties {
+    private static final String PREFIX = "pipeline.stage.";
+    private static final int DEFAULT_CONCURRENCY = 1000, DEFAULT_BATCH_WAIT_MS = 5;
+
+    // the sleeps the handlers were written with
+    private static final Map<String, Long> DEFAULT_LATENCY_MS = Map.of("auth", 5000L, "kyc", 10000L, "amt", 10000L, "pay", 5000L);
+
+    @Autowired private Environment env;
+
+    // orchestrator drives the stages through their queues and callbacks, reactor chains them as one Flux
+    public PipelineEngine getEngine() {
+        return PipelineEngine.valueOf(env.getProperty("pipeline.engine", "orchestrator").toUpperCase());
+    }
+
+    // independent copies of the whole pipeline (handlers, queues, pools), transactions are routed to one by their id
+    public int getLanes() {
+        return Math.max(1, env.getProperty("pipeline.lanes", Integer.class, 1));
+    }
+
+    // WORKER keeps the dedicated take() thread per handler, VIRTUAL dispatches every item on its own (virtual) thread
+    public StageMode getMode() {
+        return StageMode.valueOf(env.getProperty(PREFIX + "mode", "worker").toUpperCase());
+    }
+
+    // maximum in-flight operations of a stage in VIRTUAL mode (orchestrator engine admission and executor bound),
+    // replaces the platform pool size; without virtual threads every operation holds a platform thread, so the
+    // stage is capped at a few threads per core instead. The reactor engine uses reactorConcurrency()
+    public int concurrency(String handlerID) {
+        int configured = env.getProperty(PREFIX + handlerID + ".concurrency", Integer.class, DEFAULT_CONCURRENCY);
+        return ExecutorConfig.virtualThreadsAvailable() ? configured : Math.min(configured, ExecutorConfig.fallbackConcurrency());
+    }
+
+    // flatMap concurrency of a stage in each reactor lane, defaults to what its executor runs at once so that
+    // anything beyond waits in the bounded ingress buffer instead of piling up inside the executor
+    public int reactorConcurrency(String handlerID) {
+        int executor = getMode() == StageMode.VIRTUAL ? concurrency(handlerID) : ExecutorConfig.threads(handlerID);
+        return Math.max(1, env.getProperty("pipeline.reactor." + handlerID + ".concurrency", Integer.class, executor));
+    }
+
+    // AIMD admission limit of a stage, starts at the old fixed capacity of 5
+    public AdaptiveLimiter limiter(String handlerID) {
+        String key = PREFIX + handlerID + ".limit.";
+        return new AdaptiveLimiter(
+                env.getProperty(key + "initial", Integer.class, 5),
+                env.getProperty(key + "min", Integer.class, 1),
+                env.getProperty(key + "max", Integer.class, 1000),
+                env.getProperty(key + "tolerance", Double.class, 2.0),
+                env.getProperty(key + "backoff", Double.class, 0.9));
+    }
+
+    // service time model of a stage, the handlers sleep it and the Simulator advances its virtual clock by it
+    public LatencyModel latency(String handlerID) {
+        return LatencyModel.parse(env.getProperty(PREFIX + handlerID + ".latency", "fixed:" + DEFAULT_LATENCY_MS.getOrDefault(handlerID, 0L)));
+    }
+
+    // hand-off queue implementation of a stage: linked (default), array or mpsc
+    public QueueType queueType(String handlerID) {
+        return QueueType.valueOf(env.getProperty(PREFIX + handlerID + ".queue", "linked").toUpperCase());
+    }
+
+    // batch size 1 keeps the per-transaction path, anything above switches the stage into micro-batching
+    public int batchSize(String handlerID) {
+        return Math.max(1, env.getProperty(PREFIX + handlerID + ".batch-size", Integer.class, 1));
+    }
+
+    // how long a WORKER stage waits to fill a batch once the first item arrived
+    public long batchWaitMs(String handlerID) {
+        return env.getProperty(PREFIX + handlerID + ".batch-wait-ms", Long.class, (long) DEFAULT_BATCH_WAIT_MS);
+    }
+}
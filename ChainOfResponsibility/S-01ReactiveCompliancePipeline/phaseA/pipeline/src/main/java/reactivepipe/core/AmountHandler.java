@@ -1,7 +1,10 @@
 package reactivepipe.core;
 
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -11,74 +14,53 @@ import org.springframework.stereotype.Component;
 import jakarta.annotation.PostConstruct;
 import lombok.Getter;
 import lombok.Setter;
+import reactivepipe.config.StageProperties;
 import reactivepipe.data.Data;
 import reactivepipe.data.QueueStatus;
 import reactivepipe.data.StateData;
 import reactivepipe.database.Activity;
+import reactivepipe.metrics.PipelineMetrics;
 import reactivepipe.model.AbstractQueue;
 import reactivepipe.model.Handler;
+import reactivepipe.model.LatencyModel;
 
 @Getter
 @Setter
 @Component
-public class AmountHandler extends AbstractQueue implements Runnable, Handler {
+public class AmountHandler extends AbstractQueue implements Handler {
     private final String handlerID;
     private final Executor executor;
     private Handler nextNode;
 
+    private LatencyModel latency;
+
     private BiConsumer<String, Data> callback;
+    private BiConsumer<String, List<Data>> batchCallback;
 
     @Autowired private Activity activity;
+    @Autowired private StageProperties stageProperties;
+    @Autowired private PipelineMetrics pipelineMetrics;
 
-    public AmountHandler(@Qualifier("kycExecutor") Executor executor) {
+    public AmountHandler(@Qualifier("amountExecutor") Executor executor) {
         this.handlerID = "amt";
         this.executor = executor;
     }
 
     @PostConstruct
     public void startWorker() {
-        // reference to current handler instance to ensure that the thread created executes the run() of this instance only
-        Thread t = new Thread(this);
-        t.setName(handlerID + "-worker");
-        t.start();      // starting the thread
+        latency = stageProperties.latency(handlerID);
+        startStage(stageProperties, pipelineMetrics);
     }
 
     @Override public void updateState(StateData stateData) {
         activity.insertOrUpdate(stateData.getTransactionID(), QueueStatus.PAY);
     }
 
-    @Override public void run() {
-        while(!Thread.currentThread().isInterrupted()) {
-            try {
-                performOperation(queue.take()).whenCompleteAsync((x, ex) -> {
-                    if(ex != null) {
-                        System.out.println(ex.getCause());
-                        return;
-                    }
-                    if(isAvailable()) {
-                        System.out.println("status updated..."+System.currentTimeMillis());
-                        updateState(x.convertToStateData());
-                        System.out.println("callback fired to next handler..."+System.currentTimeMillis());
-                        callback.accept(handlerID, x);
-                    } else {
-                        System.out.println("status updated with backpressure...");
-                        activity.insertOrUpdate(x.getTransactionID(), QueueStatus.BACKPRESSURE_FAILURE);
-                        // the handler passed is "stop", which leads to null ultimately ending the chain safely
-                        callback.accept("stop", x);
-                    }
-                }, this.executor);
-            } catch(InterruptedException e) {
-                Thread.currentThread().interrupt();
-                break;
-            }
-        }
-    }
-
     @Override public CompletableFuture<Data> performOperation(Data inp) {
         return CompletableFuture.completedFuture(inp).thenApplyAsync(x -> {
             try {
                 System.out.println("amt started..."+System.currentTimeMillis());
-                Thread.sleep(10000);
+                TimeUnit.NANOSECONDS.sleep(latency.nextNanos(ThreadLocalRandom.current()));
                 System.out.println("amt ended..."+System.currentTimeMillis());
             } catch(InterruptedException e) {
                 Thread.currentThread().interrupt();
@@ -87,9 +69,22 @@ public class AmountHandler extends AbstractQueue implements Runnable, Handler {
         }, this.executor);
     }
 
-    @Override public void enqueue(Data data) {queue.add(data);}
+    @Override public CompletableFuture<List<Data>> performBatch(List<Data> batch) {
+        return CompletableFuture.completedFuture(batch).thenApplyAsync(xs -> {
+            try {
+                System.out.println("amt batch of "+xs.size()+" started..."+System.currentTimeMillis());
+                TimeUnit.NANOSECONDS.sleep(latency.nextNanos(ThreadLocalRandom.current()));
+                System.out.println("amt batch ended..."+System.currentTimeMillis());
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return xs;
+        }, this.executor);
+    }
 
     @Override public void setCallback(BiConsumer<String, Data> c) {this.callback = c;}
 
+    @Override public void setBatchCallback(BiConsumer<String, List<Data>> c) {this.batchCallback = c;}
+
     @Override public String getHandlerID() {return this.handlerID;}
 }
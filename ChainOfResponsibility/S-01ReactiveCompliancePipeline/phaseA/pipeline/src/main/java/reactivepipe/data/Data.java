@@ -11,11 +11,28 @@ public class Data {
     private String transactionID;
     private int amount;
     private final LinkedHashMap<String, String> logs;
+    // System.nanoTime() stamps for the latency histograms, 0 when not set
+    private long createdAt, enqueuedAt;
 
     public Data() {
         this.logs = new LinkedHashMap<>();
     }
 
+    // every branch of a fan-out works on its own copy, the logs are merged back at the join
+    public Data copy() {
+        Data d = new Data();
+        d.setTransactionID(transactionID);
+        d.setAmount(amount);
+        d.setCreatedAt(createdAt);
+        d.getLogs().putAll(logs);
+        return d;
+    }
+
+    public Data merge(Data other) {
+        this.logs.putAll(other.getLogs());
+        return this;
+    }
+
     public StateData convertToStateData() {
         StateData s = new StateData();
         s.setTransactionID(transactionID);
@@ -0,0 +1,5 @@
+package reactivepipe.data;
+
+public enum QueueType {
+    LINKED, ARRAY, MPSC;
+}
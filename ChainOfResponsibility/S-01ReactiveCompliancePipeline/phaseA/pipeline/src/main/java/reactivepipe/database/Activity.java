@@ -1,7 +1,11 @@
 package reactivepipe.database;
 
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
 
 import org.springframework.stereotype.Component;
 
@@ -11,11 +15,38 @@ import reactivepipe.data.QueueStatus;
 @Getter
 @Component
 public class Activity {
-    private final Map<String, QueueStatus> status = new HashMap<>();
+    // written from every stage executor, entries leave together with their result in ResultStore
+    private final Map<String, QueueStatus> status = new ConcurrentHashMap<>();
+    // notified on every stage transition, used to push updates instead of being polled
+    private final List<BiConsumer<String, QueueStatus>> listeners = new CopyOnWriteArrayList<>();
+    // ids ResultStore still holds, a stage finishing after its transaction was evicted must not bring the entry back
+    private volatile Predicate<String> tracked = id -> true;
 
     public QueueStatus get(String id) {return status.get(id);}
 
-    public void insertOrUpdate(String id, QueueStatus status) {this.status.put(id, status);}
+    public void insertOrUpdate(String id, QueueStatus status) {
+        if(!tracked.test(id))
+            return;
+        this.status.put(id, status);
+        if(!tracked.test(id)) {
+            this.status.remove(id, status);     // evicted between the check and the put
+            return;
+        }
+        for(BiConsumer<String, QueueStatus> listener : listeners)
+            listener.accept(id, status);
+    }
+
+    // only sets a status no stage has written yet, e.g. the one a resumed transaction is restored with
+    public void insertIfAbsent(String id, QueueStatus status) {
+        if(tracked.test(id) && this.status.putIfAbsent(id, status) == null && !tracked.test(id))
+            this.status.remove(id, status);
+    }
+
+    public void trackOnly(Predicate<String> tracked) {this.tracked = tracked;}
+
+    public void remove(String id) {this.status.remove(id);}
+
+    public void addListener(BiConsumer<String, QueueStatus> listener) {listeners.add(listener);}
 
     public Map<String, QueueStatus> viewAll() {return this.status;}
 }
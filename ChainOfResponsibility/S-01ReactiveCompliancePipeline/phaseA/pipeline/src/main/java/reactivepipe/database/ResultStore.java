@@ -0,0 +1,202 @@
+package reactivepipe.database;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import reactivepipe.data.Data;
+import reactivepipe.metrics.PipelineMetrics;
+
+@Component
+public class ResultStore {
+    // registration order for the in-flight ttl, completion and fetch order for the two retention ttls: every ttl is
+    // fixed, so the head of each queue expires first and a sweep stops at the first entry that is still young enough
+    private final ConcurrentLinkedQueue<Entry> registered = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Entry> completed = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Entry> fetched = new ConcurrentLinkedQueue<>();
+    private final ConcurrentHashMap<String, Entry> results = new ConcurrentHashMap<>();
+
+    // slots taken, reserved before an entry is stored so max-entries is never exceeded
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicLong evictedByTtl = new AtomicLong(), evictedAfterFetch = new AtomicLong(), evictedByCapacity = new AtomicLong(),
+            timedOut = new AtomicLong(), rejected = new AtomicLong();
+
+    @Value("${pipeline.results.max-entries:10000}") private int maxEntries;
+    @Value("${pipeline.results.ttl-ms:600000}") private long ttlMs;
+    @Value("${pipeline.results.fetched-ttl-ms:30000}") private long fetchedTtlMs;
+    @Value("${pipeline.results.in-flight-ttl-ms:120000}") private long inFlightTtlMs;
+
+    @Autowired private Activity activity;
+    @Autowired private WriteAheadLog wal;
+    @Autowired private MeterRegistry registry;
+    @Autowired private PipelineMetrics pipelineMetrics;
+
+    private static class Entry {
+        private final String id;
+        private final long registeredAt = System.currentTimeMillis();
+        private final CompletableFuture<Data> future = new CompletableFuture<>();
+        private volatile long completedAt, fetchedAt;
+
+        private Entry(String id) {this.id = id;}
+    }
+
+    @PostConstruct
+    public void registerMetrics() {
+        activity.trackOnly(results::containsKey);
+        Gauge.builder("pipeline.results.size", size, AtomicInteger::get).register(registry);
+        Gauge.builder("pipeline.results.pending", pending, AtomicInteger::get).register(registry);
+        FunctionCounter.builder("pipeline.results.evicted", evictedByTtl, AtomicLong::get).tag("reason", "ttl").register(registry);
+        FunctionCounter.builder("pipeline.results.evicted", evictedAfterFetch, AtomicLong::get).tag("reason", "fetched").register(registry);
+        FunctionCounter.builder("pipeline.results.evicted", evictedByCapacity, AtomicLong::get).tag("reason", "capacity").register(registry);
+        FunctionCounter.builder("pipeline.results.timed-out", timedOut, AtomicLong::get).register(registry);
+        FunctionCounter.builder("pipeline.results.rejected", rejected, AtomicLong::get).register(registry);
+    }
+
+    // a full store of in-flight transactions refuses new ones, the returned future is already failed and nothing was kept
+    public CompletableFuture<Data> register(String id) {
+        if(!reserve()) {
+            rejected.incrementAndGet();
+            return CompletableFuture.failedFuture(new RejectedExecutionException("result store full, " + maxEntries + " transactions held"));
+        }
+        Entry entry = new Entry(id);
+        Entry previous = results.put(id, entry);
+        if(previous != null) {
+            size.decrementAndGet();     // the id was registered again (e.g. resumed), the old entry gives its slot back
+            if(previous.future.completeExceptionally(new CancellationException("transaction " + id + " registered again")))
+                pending.decrementAndGet();
+        }
+        pending.incrementAndGet();
+        registered.add(entry);
+        return entry.future;
+    }
+
+    public void complete(String id, Data data) {
+        Entry entry = results.get(id);
+        if(entry == null || entry.future.isDone())
+            return;     // a late finish of a timed out transaction keeps its place in the completed queue
+        entry.completedAt = System.currentTimeMillis();
+        if(entry.future.complete(data)) {
+            pending.decrementAndGet();
+            completed.add(entry);
+            pipelineMetrics.endToEnd(data);
+        }
+    }
+
+    // the transaction ended without a result, followers and pollers see the cause instead of a pending future
+    public void completeExceptionally(String id, Throwable cause) {
+        Entry entry = results.get(id);
+        if(entry == null || entry.future.isDone())
+            return;
+        entry.completedAt = System.currentTimeMillis();
+        if(entry.future.completeExceptionally(cause)) {
+            pending.decrementAndGet();
+            completed.add(entry);
+        }
+    }
+
+    public CompletableFuture<Data> get(String id) {
+        Entry entry = results.get(id);
+        return entry == null ? null : entry.future;
+    }
+
+    public boolean isDone(String id) {
+        Entry entry = results.get(id);
+        return entry == null || entry.future.isDone();
+    }
+
+    // a fetched result only lingers for the shorter fetched-ttl, repeated polls keep the first fetch time
+    public void markFetched(String id) {
+        Entry entry = results.get(id);
+        if(entry != null && entry.fetchedAt == 0) {
+            entry.fetchedAt = System.currentTimeMillis();
+            fetched.add(entry);
+        }
+    }
+
+    public int size() {return size.get();}
+
+    public int pending() {return pending.get();}
+
+    @Scheduled(fixedDelayString = "${pipeline.results.sweep-interval-ms:1000}")
+    public void sweep() {
+        long now = System.currentTimeMillis();
+        Entry entry;
+        while((entry = registered.peek()) != null) {
+            if(entry.future.isDone() || results.get(entry.id) != entry) {
+                registered.remove(entry);   // completed ones are timed by the completed queue from here on
+                continue;
+            }
+            if(now - entry.registeredAt < inFlightTtlMs)
+                break;
+            registered.remove(entry);
+            // stuck in the pipeline past the in-flight ttl: the caller is told it timed out, the timeout is kept like
+            // any other result so a poll can still see it, capacity may take its slot back like any completed one
+            entry.completedAt = now;
+            if(entry.future.completeExceptionally(new TimeoutException("transaction " + entry.id + " still in flight after " + inFlightTtlMs + " ms"))) {
+                pending.decrementAndGet();
+                completed.add(entry);
+                timedOut.incrementAndGet();
+            }
+            wal.done(entry.id);     // not resumed on the next start either, its caller was already told
+        }
+        expire(fetched, e -> e.fetchedAt, fetchedTtlMs, now, evictedAfterFetch);
+        expire(completed, e -> e.completedAt, ttlMs, now, evictedByTtl);
+    }
+
+    private void expire(ConcurrentLinkedQueue<Entry> queue, ToLongFunction<Entry> since, long ttl, long now, AtomicLong evicted) {
+        Entry entry;
+        while((entry = queue.peek()) != null) {
+            if(results.get(entry.id) == entry && now - since.applyAsLong(entry) < ttl)
+                break;
+            // remove and not poll, a register making room may have taken the head meanwhile
+            if(queue.remove(entry) && evict(entry))
+                evicted.incrementAndGet();
+        }
+    }
+
+    // a slot is taken before the entry is stored, when none is free the oldest completed result makes room, in-flight
+    // transactions are never dropped for capacity
+    private boolean reserve() {
+        while(size.incrementAndGet() > maxEntries) {
+            size.decrementAndGet();
+            if(!evictOldestCompleted())
+                return false;
+        }
+        return true;
+    }
+
+    private boolean evictOldestCompleted() {
+        Entry entry;
+        while((entry = completed.poll()) != null) {
+            if(evict(entry)) {
+                evictedByCapacity.incrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean evict(Entry entry) {
+        if(!results.remove(entry.id, entry))
+            return false;   // evicted already, or replaced by a newer registration
+        size.decrementAndGet();
+        activity.remove(entry.id);
+        return true;
+    }
+}
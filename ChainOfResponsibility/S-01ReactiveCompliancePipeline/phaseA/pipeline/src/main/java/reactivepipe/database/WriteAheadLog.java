@@ -0,0 +1,336 @@
+package reactivepipe.database;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import reactivepipe.data.Data;
+import reactivepipe.data.QueueStatus;
+
+// append-only log of the stage transitions on a memory-mapped file, replayed on startup to resume unfinished transactions
+@Component
+public class WriteAheadLog {
+    private static final byte BEGIN = 1, STAGE = 2, DONE = 3;
+    // body length + crc32 (of generation, sequence and body) + generation + sequence
+    private static final int HEADER = 20;
+
+    @Value("${pipeline.wal.enabled:false}") private boolean enabled;
+    @Value("${pipeline.wal.path:pipeline.wal}") private String path;
+    @Value("${pipeline.wal.size-mb:64}") private int sizeMb;
+    @Value("${pipeline.wal.group-commit-ms:5}") private long groupCommitMs;
+
+    @Autowired private MeterRegistry registry;
+
+    // unfinished transactions, rebuilt by the replay and rewritten as the whole content of the file on compaction
+    private final Map<String, Entry> live = new LinkedHashMap<>();
+    private List<Recovered> recovered = List.of();
+
+    private MappedByteBuffer buffer;
+    // the mapping the committer is forcing outside the lock, a compaction leaves unmapping it to the committer
+    private MappedByteBuffer forcing;
+    private int flushedTo;
+    // every record carries both, a replay stops at the first one that does not continue the sequence or goes back to
+    // an older generation (bumped on every start and compaction): stale bytes behind the end of the log are never applied
+    private int generation;
+    private long sequence;
+    // sequence of the last appended and the last forced record, callers wait on durable to pass their sequence
+    private long appended, durable;
+    private volatile boolean running;
+    private Thread committer;
+
+    private static class Entry {
+        private int amount;
+        private QueueStatus status;
+        private final Set<String> stages = new LinkedHashSet<>();
+        private final Map<String, String> logs = new LinkedHashMap<>();
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Recovered {
+        private final Data data;
+        private final Set<String> completedStages;
+        private final QueueStatus status;
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        if(!enabled)
+            return;
+        Path file = Path.of(path);
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // the mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), (long) sizeMb << 20));
+        }
+        replay();
+        flushedTo = buffer.position();
+        Gauge.builder("pipeline.wal.live", this, wal -> wal.liveCount()).register(registry);
+        running = true;
+        committer = new Thread(this::groupCommit);
+        committer.setName("wal-group-commit");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        if(!running)
+            return;
+        running = false;
+        committer.interrupt();
+        committer.join();
+        synchronized(this) {
+            buffer.force();
+            durable = appended;
+            notifyAll();
+        }
+    }
+
+    // unfinished transactions found at startup with the stages they already passed
+    public List<Recovered> recovered() {return recovered;}
+
+    public long begin(Data data) {return append(BEGIN, data.getTransactionID(), null, data.getAmount(), Map.of());}
+
+    // the logs of the transaction so far go with the record, a resumed transaction keeps what the passed stages wrote
+    public long stage(String id, String stage, QueueStatus status, Map<String, String> logs) {
+        return append(STAGE, id, stage, status == null ? -1 : status.ordinal(), logs);
+    }
+
+    // also called when the result store gives up on a transaction (in-flight ttl), so live does not keep it forever
+    public long done(String id) {return append(DONE, id, null, 0, Map.of());}
+
+    // blocks until the record with this sequence is on disk, one force covers every record appended meanwhile
+    public synchronized void awaitDurable(long sequence) {
+        while(running && durable < sequence) {
+            try {
+                wait();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private synchronized int liveCount() {return live.size();}
+
+    private long append(byte type, String id, String stage, int value, Map<String, String> logs) {
+        if(!running)
+            return 0;
+        byte[] body = encode(type, id, stage, value, logs);
+        synchronized(this) {
+            if(buffer.remaining() < HEADER + body.length)
+                compact(HEADER + body.length);
+            write(buffer, generation, ++sequence, body);
+            apply(type, id, stage, value, logs);
+            return ++appended;
+        }
+    }
+
+    private void groupCommit() {
+        while(running) {
+            try {
+                Thread.sleep(groupCommitMs);
+            } catch(InterruptedException e) {
+                return;
+            }
+            MappedByteBuffer target;
+            int from, to;
+            long upTo;
+            synchronized(this) {
+                if(appended == durable)
+                    continue;
+                target = buffer;
+                forcing = target;
+                from = flushedTo;
+                to = buffer.position();
+                upTo = appended;
+            }
+            // appends keep going while the pages are written out
+            target.force(from, to - from);
+            synchronized(this) {
+                forcing = null;
+                if(target == buffer)
+                    flushedTo = Math.max(flushedTo, to);
+                else
+                    unmap(target);      // retired by a compaction while it was being forced
+                durable = Math.max(durable, upTo);
+                notifyAll();
+            }
+        }
+    }
+
+    private void replay() {
+        boolean first = true;
+        while(buffer.remaining() >= HEADER) {
+            int start = buffer.position();
+            int length = buffer.getInt(), crc = buffer.getInt(), gen = buffer.getInt();
+            long seq = buffer.getLong();
+            if(length <= 0 || length > buffer.remaining()) {
+                buffer.position(start);     // end of the log, or a torn record that is overwritten by the next append
+                break;
+            }
+            byte[] body = new byte[length];
+            buffer.get(body);
+            // a torn record, or an intact one left over from before the current end of the log
+            if(crc(gen, seq, body) != crc || !first && (gen < generation || seq != sequence + 1)) {
+                buffer.position(start);
+                break;
+            }
+            first = false;
+            generation = gen;
+            sequence = seq;
+            ByteBuffer b = ByteBuffer.wrap(body);
+            byte type = b.get();
+            String id = readString(b), stage = readString(b);
+            int value = b.getInt();
+            Map<String, String> logs = new LinkedHashMap<>();
+            for(int n = b.getShort(); n > 0; n--)
+                logs.put(readString(b), readString(b));
+            apply(type, id, stage.isEmpty() ? null : stage, value, logs);
+        }
+        generation++;       // this run's records are told apart from anything an earlier run left behind them
+        List<Recovered> found = new ArrayList<>();
+        live.forEach((id, entry) -> {
+            Data data = new Data();
+            data.setTransactionID(id);
+            data.setAmount(entry.amount);
+            data.getLogs().putAll(entry.logs);
+            found.add(new Recovered(data, Set.copyOf(entry.stages), entry.status));
+        });
+        recovered = found;
+    }
+
+    private void apply(byte type, String id, String stage, int value, Map<String, String> logs) {
+        if(type == BEGIN) {
+            Entry entry = new Entry();
+            entry.amount = value;
+            live.put(id, entry);
+        } else if(type == STAGE) {
+            Entry entry = live.get(id);
+            if(entry != null) {
+                entry.stages.add(stage);
+                entry.logs.putAll(logs);
+                if(value >= 0)
+                    entry.status = QueueStatus.values()[value];
+            }
+        } else {
+            live.remove(id);
+        }
+    }
+
+    // rewrites only the unfinished transactions into a fresh file, grown when they do not fit the configured size
+    private void compact(int needed) {
+        List<byte[]> records = new ArrayList<>();
+        int bytes = needed;
+        for(Map.Entry<String, Entry> e : live.entrySet()) {
+            Entry entry = e.getValue();
+            records.add(encode(BEGIN, e.getKey(), null, entry.amount, Map.of()));
+            // the merged logs ride on the first stage record, a transaction that passed no stage has none
+            Map<String, String> logs = entry.logs;
+            for(String stage : entry.stages) {
+                records.add(encode(STAGE, e.getKey(), stage, entry.status == null ? -1 : entry.status.ordinal(), logs));
+                logs = Map.of();
+            }
+        }
+        for(byte[] record : records)
+            bytes += HEADER + record.length;
+        Path file = Path.of(path), tmp = Path.of(path + ".compact");
+        try(FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer next = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max((long) sizeMb << 20, 2L * bytes));
+            generation++;
+            for(byte[] record : records)
+                write(next, generation, ++sequence, record);
+            next.force();
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            MappedByteBuffer retired = buffer;
+            buffer = next;
+            if(retired != forcing)
+                unmap(retired);     // otherwise the committer does once its force returns
+            flushedTo = next.position();
+            durable = appended;
+            notifyAll();
+        } catch(IOException e) {
+            throw new UncheckedIOException("write-ahead log compaction failed", e);
+        }
+    }
+
+    private static void write(ByteBuffer target, int generation, long sequence, byte[] body) {
+        target.putInt(body.length).putInt(crc(generation, sequence, body)).putInt(generation).putLong(sequence).put(body);
+    }
+
+    private static byte[] encode(byte type, String id, String stage, int value, Map<String, String> logs) {
+        List<byte[]> strings = new ArrayList<>(2 + 2 * logs.size());
+        strings.add(id.getBytes(StandardCharsets.UTF_8));
+        strings.add(stage == null ? new byte[0] : stage.getBytes(StandardCharsets.UTF_8));
+        logs.forEach((k, v) -> {
+            strings.add(k.getBytes(StandardCharsets.UTF_8));
+            strings.add(String.valueOf(v).getBytes(StandardCharsets.UTF_8));
+        });
+        int size = 1 + 4 + 2;
+        for(byte[] str : strings)
+            size += 2 + str.length;
+        ByteBuffer b = ByteBuffer.allocate(size);
+        b.put(type);
+        putString(b, strings.get(0));
+        putString(b, strings.get(1));
+        b.putInt(value).putShort((short) logs.size());
+        for(int i = 2; i < strings.size(); i++)
+            putString(b, strings.get(i));
+        return b.array();
+    }
+
+    private static void putString(ByteBuffer b, byte[] bytes) {
+        b.putShort((short) bytes.length).put(bytes);
+    }
+
+    private static String readString(ByteBuffer b) {
+        byte[] bytes = new byte[b.getShort()];
+        b.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int crc(int generation, long sequence, byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(12).putInt(generation).putLong(sequence).flip());
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+    // Java 17 has no public unmap, a retired mapping is released through Unsafe.invokeCleaner (jdk.unsupported) and
+    // otherwise left to the GC; only called once nothing reads, writes or forces it any more
+    private static void unmap(MappedByteBuffer mapped) {
+        try {
+            Class<?> unsafe = Class.forName("sun.misc.Unsafe");
+            Field instance = unsafe.getDeclaredField("theUnsafe");
+            instance.setAccessible(true);
+            unsafe.getMethod("invokeCleaner", ByteBuffer.class).invoke(instance.get(null), mapped);
+        } catch(ReflectiveOperationException | RuntimeException e) {
+            // not available on this runtime, the mapping goes with the buffer object
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package reactivepipe.metrics;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import reactivepipe.data.Data;
+import reactivepipe.model.AdaptiveLimiter;
+
+@Component
+public class PipelineMetrics {
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+
+    @Autowired private MeterRegistry registry;
+
+    private final Map<String, StageMetrics> stages = new ConcurrentHashMap<>();
+    private Timer endToEnd;
+
+    @PostConstruct
+    public void init() {
+        endToEnd = timer("pipeline.transaction.latency", null);
+    }
+
+    // per handler ID: queue wait, service time, backpressure rejections (shared by the lanes) and a live queue depth gauge per lane
+    public StageMetrics forStage(String handlerID, int lane, Supplier<Number> queueDepth) {
+        Gauge.builder("pipeline.stage.queue.depth", queueDepth).tag("stage", handlerID).tag("lane", String.valueOf(lane)).register(registry);
+        return forStage(handlerID);
+    }
+
+    public void limiter(String handlerID, int lane, AdaptiveLimiter limiter) {
+        Gauge.builder("pipeline.stage.limit", limiter, AdaptiveLimiter::getLimit).tag("stage", handlerID).tag("lane", String.valueOf(lane)).register(registry);
+        Gauge.builder("pipeline.stage.inflight", limiter, AdaptiveLimiter::getInFlight).tag("stage", handlerID).tag("lane", String.valueOf(lane)).register(registry);
+    }
+
+    // stages without a queue of their own (Flux engine) only report service time and rejections
+    public StageMetrics forStage(String handlerID) {
+        return stages.computeIfAbsent(handlerID, this::create);
+    }
+
+    public void endToEnd(Data data) {
+        if(data.getCreatedAt() > 0)
+            endToEnd.record(System.nanoTime() - data.getCreatedAt(), TimeUnit.NANOSECONDS);
+    }
+
+    private StageMetrics create(String stage) {
+        return new StageMetrics(
+                timer("pipeline.stage.queue.wait", stage),
+                timer("pipeline.stage.service", stage),
+                Counter.builder("pipeline.stage.backpressure.rejections").tag("stage", stage).register(registry));
+    }
+
+    private Timer timer(String name, String stage) {
+        Timer.Builder builder = Timer.builder(name)
+                .publishPercentiles(PERCENTILES)
+                .distributionStatisticExpiry(Duration.ofMinutes(1));
+        if(stage != null)
+            builder.tag("stage", stage);
+        return builder.register(registry);
+    }
+}
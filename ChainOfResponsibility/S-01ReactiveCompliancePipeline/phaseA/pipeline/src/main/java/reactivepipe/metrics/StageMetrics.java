@@ -0,0 +1,27 @@
+package reactivepipe.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+import lombok.AllArgsConstructor;
+
+@AllArgsConstructor
+public class StageMetrics {
+    private final Timer queueWait;
+    private final Timer service;
+    private final Counter backpressure;
+
+    public void queueWait(long enqueuedAt, long now) {
+        if(enqueuedAt > 0)
+            queueWait.record(now - enqueuedAt, TimeUnit.NANOSECONDS);
+    }
+
+    // a batch records its service time once per transaction it carried
+    public void service(long elapsedNanos, int items) {
+        for(int i = 0; i < items; i++)
+            service.record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void rejected(int items) {backpressure.increment(items);}
+}
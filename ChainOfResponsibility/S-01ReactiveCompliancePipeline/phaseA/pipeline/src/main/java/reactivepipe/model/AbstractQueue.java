@@ -1,18 +1,240 @@
 package reactivepipe.model;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
 
+import reactivepipe.config.StageProperties;
 import reactivepipe.data.Data;
+import reactivepipe.data.PipelineEngine;
+import reactivepipe.data.QueueStatus;
+import reactivepipe.data.QueueType;
+import reactivepipe.data.StageMode;
 import reactivepipe.data.StateData;
+import reactivepipe.database.Activity;
+import reactivepipe.metrics.PipelineMetrics;
+import reactivepipe.metrics.StageMetrics;
 
-public abstract class AbstractQueue {
-    protected final LinkedBlockingDeque<Data> queue = new LinkedBlockingDeque<>(5);
+public abstract class AbstractQueue implements Runnable {
+    protected BlockingQueue<Data> queue;
 
-    private int capacity() {return 5 - queue.size();}
+    private StageMode mode = StageMode.WORKER;
+    private Semaphore inFlight;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private QueueType queueType = QueueType.LINKED;
+    private int batchSize = 1;
+    private long batchWaitNanos;
+    private StageMetrics metrics;
+    // bounds the transactions inside the stage (queued + in service), replaces the fixed queue capacity
+    private AdaptiveLimiter limiter;
+    // pipeline lane the instance belongs to, every lane owns a full set of handlers
+    private int lane;
 
-    protected boolean isAvailable() {return capacity() > 0;}
+    public void enqueue(Data data) {
+        if(admit(data) && mode == StageMode.VIRTUAL)
+            drain();
+    }
 
-    public void enqueue(Data data) {queue.add(data);}
+    public void enqueueAll(List<Data> batch) {
+        for(Data data : batch)
+            admit(data);
+        if(mode == StageMode.VIRTUAL)
+            drain();
+    }
+
+    // admission control of the stage, rejected transactions end with BACKPRESSURE_FAILURE
+    private boolean admit(Data data) {
+        if(!limiter.tryAcquire()) {
+            System.out.println("status updated with backpressure...");
+            metrics.rejected(1);
+            getActivity().insertOrUpdate(data.getTransactionID(), QueueStatus.BACKPRESSURE_FAILURE);
+            // the handler passed is "stop", which leads to null ultimately ending the chain safely
+            getCallback().accept("stop", data);
+            return false;
+        }
+        data.setEnqueuedAt(System.nanoTime());
+        queue.add(data);    // never full, the queue holds at least the limiter's maximum
+        return true;
+    }
+
+    // starts the stage, only the WORKER mode owns a dedicated thread blocking on the queue
+    protected void startStage(StageProperties stage, PipelineMetrics pipelineMetrics) {
+        this.mode = stage.getMode();
+        this.batchSize = stage.batchSize(getHandlerID());
+        this.batchWaitNanos = TimeUnit.MILLISECONDS.toNanos(stage.batchWaitMs(getHandlerID()));
+        this.limiter = stage.limiter(getHandlerID());
+        this.queueType = stage.queueType(getHandlerID());
+        this.queue = newQueue(Math.max(limiter.getMaxLimit(), batchSize));
+        this.metrics = pipelineMetrics.forStage(getHandlerID(), lane, () -> queue.size());
+        pipelineMetrics.limiter(getHandlerID(), lane, limiter);
+        if(mode == StageMode.VIRTUAL) {
+            this.inFlight = new Semaphore(stage.concurrency(getHandlerID()));
+            return;
+        }
+        if(stage.getEngine() == PipelineEngine.REACTOR)
+            return;     // the Flux engine calls performOperation directly, nothing consumes the queue
+        // reference to current handler instance to ensure that the thread created executes the run() of this instance only
+        Thread t = new Thread(this);
+        t.setName(getHandlerID() + "-" + lane + "-worker");
+        t.start();      // starting the thread
+    }
+
+    public int getLane() {return lane;}
+
+    // set before the stage is started
+    public void setLane(int lane) {this.lane = lane;}
+
+    // the stage's hand-off queue (pipeline.stage.<id>.queue): linked allocates a node per item and locks put and take
+    // separately, array preallocates behind one lock, mpsc is a lock-free ring for the single consumer of the stage
+    protected BlockingQueue<Data> newQueue(int capacity) {
+        switch(queueType) {
+            case ARRAY: return new ArrayBlockingQueue<>(capacity);
+            case MPSC: return new MpscRingBuffer<>(capacity);
+            default: return new LinkedBlockingDeque<>(capacity);
+        }
+    }
+
+    @Override public void run() {
+        while(!Thread.currentThread().isInterrupted()) {
+            try {
+                if(batchSize > 1)
+                    dispatchBatch(takeBatch());
+                else
+                    dispatch(queue.take());
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    // blocks for the first item, then collects until the batch is full or the batch wait runs out
+    private List<Data> takeBatch() throws InterruptedException {
+        List<Data> batch = new ArrayList<>(batchSize);
+        batch.add(queue.take());
+        long deadline = System.nanoTime() + batchWaitNanos;
+        while(batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if(batch.size() == batchSize || remaining <= 0)
+                break;
+            Data next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if(next == null)
+                break;
+            batch.add(next);
+        }
+        return batch;
+    }
+
+    // VIRTUAL mode: one thread at a time pulls items while permits are left, every completion releases its permit and
+    // drains again, the single consumer is what the MPSC queue requires and keeps the other queues' take side uncontended
+    private void drain() {
+        do {
+            if(!draining.compareAndSet(false, true))
+                return;     // the current holder picks up what was just added, see the re-check below
+            try {
+                drainOnce();
+            } finally {
+                draining.set(false);
+            }
+            // an item published or a permit released after the holder's last look but before it let go
+        } while(queue.peek() != null && inFlight.availablePermits() > 0);
+    }
+
+    private void drainOnce() {
+        while(!queue.isEmpty() && inFlight.tryAcquire()) {
+            if(batchSize > 1) {
+                // no batch wait here, a permit takes whatever is queued right now
+                List<Data> batch = new ArrayList<>(batchSize);
+                queue.drainTo(batch, batchSize);
+                if(batch.isEmpty()) {
+                    inFlight.release();
+                    return;
+                }
+                dispatchBatch(batch).whenComplete((x, ex) -> {
+                    inFlight.release();
+                    drain();
+                });
+                continue;
+            }
+            Data data = queue.poll();
+            if(data == null) {
+                inFlight.release();
+                return;
+            }
+            dispatch(data).whenComplete((x, ex) -> {
+                inFlight.release();
+                drain();
+            });
+        }
+    }
+
+    private CompletableFuture<Data> dispatch(Data data) {
+        long startedAt = System.nanoTime();
+        metrics.queueWait(data.getEnqueuedAt(), startedAt);
+        return performOperation(data).whenCompleteAsync((x, ex) -> {
+            long elapsed = System.nanoTime() - startedAt;
+            metrics.service(elapsed, 1);
+            limiter.onSample(elapsed);
+            limiter.release();
+            afterOperation(x, ex);
+        }, getExecutor());
+    }
+
+    private CompletableFuture<List<Data>> dispatchBatch(List<Data> batch) {
+        long startedAt = System.nanoTime();
+        batch.forEach(data -> metrics.queueWait(data.getEnqueuedAt(), startedAt));
+        return performBatch(batch).whenCompleteAsync((xs, ex) -> {
+            long elapsed = System.nanoTime() - startedAt;
+            metrics.service(elapsed, batch.size());
+            limiter.onSample(elapsed);
+            batch.forEach(x -> limiter.release());
+            afterBatch(xs, ex);
+        }, getExecutor());
+    }
+
+    private void afterOperation(Data x, Throwable ex) {
+        if(ex != null) {
+            System.out.println(ex.getCause());
+            return;
+        }
+        System.out.println("status updated..."+System.currentTimeMillis());
+        updateState(x.convertToStateData());
+        System.out.println("callback fired to next handler..."+System.currentTimeMillis());
+        getCallback().accept(getHandlerID(), x);
+    }
+
+    private void afterBatch(List<Data> xs, Throwable ex) {
+        if(ex != null) {
+            System.out.println(ex.getCause());
+            return;
+        }
+        xs.forEach(x -> updateState(x.convertToStateData()));
+        System.out.println("batch of "+xs.size()+" fired to next handler..."+System.currentTimeMillis());
+        getBatchCallback().accept(getHandlerID(), xs);
+    }
 
     public abstract void updateState(StateData stateData);
+
+    public abstract CompletableFuture<Data> performOperation(Data data);
+
+    public abstract CompletableFuture<List<Data>> performBatch(List<Data> batch);
+
+    public abstract String getHandlerID();
+
+    public abstract Executor getExecutor();
+
+    public abstract Activity getActivity();
+
+    public abstract BiConsumer<String, Data> getCallback();
+
+    public abstract BiConsumer<String, List<Data>> getBatchCallback();
 }
@@ -0,0 +1,61 @@
+package reactivepipe.model;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// AIMD limit on the transactions admitted into a stage (queued + in service), driven by the observed service latency
+public class AdaptiveLimiter {
+    private static final int BASELINE_WINDOW = 1000;
+
+    private final int minLimit, maxLimit;
+    private final double tolerance, backoff;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile double limit;
+
+    // smallest latency seen, re-learned every BASELINE_WINDOW samples so a slower steady state becomes the new normal
+    private long baseline = Long.MAX_VALUE, windowMin = Long.MAX_VALUE;
+    private int samples;
+
+    public AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit, double tolerance, double backoff) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.backoff = backoff;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    public boolean tryAcquire() {
+        while(true) {
+            int current = inFlight.get();
+            if(current >= getLimit())
+                return false;
+            if(inFlight.compareAndSet(current, current + 1))
+                return true;
+        }
+    }
+
+    public void release() {inFlight.decrementAndGet();}
+
+    public synchronized void onSample(long latencyNanos) {
+        windowMin = Math.min(windowMin, latencyNanos);
+        baseline = Math.min(baseline, latencyNanos);
+        if(++samples == BASELINE_WINDOW) {
+            baseline = windowMin;
+            windowMin = Long.MAX_VALUE;
+            samples = 0;
+        }
+        if(latencyNanos <= baseline * tolerance) {
+            // additive increase, only while the stage actually uses its limit so an idle stage does not inflate it
+            if(inFlight.get() * 2 >= limit)
+                limit = Math.min(maxLimit, limit + 1);
+        } else {
+            limit = Math.max(minLimit, limit * backoff);
+        }
+    }
+
+    public int getLimit() {return (int) limit;}
+
+    public int getInFlight() {return inFlight.get();}
+
+    public int getMaxLimit() {return maxLimit;}
+}
@@ -1,16 +1,30 @@
 package reactivepipe.model;
 
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.BiConsumer;
 
 import reactivepipe.data.Data;
+import reactivepipe.data.StateData;
 
 public interface Handler {
     public CompletableFuture<Data> performOperation(Data data);
 
+    // batch mode (pipeline.stage.<id>.batch-size > 1), falls back to one operation per item unless a handler overrides it
+    public default CompletableFuture<List<Data>> performBatch(List<Data> batch) {
+        CompletableFuture<?>[] operations = batch.stream().map(this::performOperation).toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(operations).thenApply(v -> batch);
+    }
+
+    public void updateState(StateData stateData);
+
     public String getHandlerID();
 
     public void enqueue(Data data);
 
+    public void enqueueAll(List<Data> batch);
+
     public void setCallback(BiConsumer<String, Data> callback);
+
+    public void setBatchCallback(BiConsumer<String, List<Data>> callback);
 }
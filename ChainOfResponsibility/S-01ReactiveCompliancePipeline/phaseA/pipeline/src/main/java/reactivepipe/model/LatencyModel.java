@@ -0,0 +1,89 @@
+package reactivepipe.model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// service time of one stage operation, shared by the handlers (real sleeps) and the Simulator (virtual time)
+public interface LatencyModel {
+    long nextNanos(Random random);
+
+    // fixed:<ms> | exp:<mean ms> | lognormal:<median ms>:<sigma> | trace:<file, one ms value per line, replayed in a loop>
+    public static LatencyModel parse(String spec) {
+        String[] parts = spec.trim().split(":", 2);
+        String kind = parts[0].toLowerCase(), args = parts.length > 1 ? parts[1] : "";
+        switch(kind) {
+            case "fixed":
+                return new Fixed(millis(args));
+            case "exp":
+                return new Exponential(millis(args));
+            case "lognormal": {
+                String[] p = args.split(":");
+                return new LogNormal(millis(p[0]), p.length > 1 ? Double.parseDouble(p[1]) : 0.5);
+            }
+            case "trace":
+                return Trace.load(Path.of(args));
+            default:
+                throw new IllegalArgumentException("unknown latency model " + spec);
+        }
+    }
+
+    private static long millis(String ms) {return (long) (Double.parseDouble(ms) * TimeUnit.MILLISECONDS.toNanos(1));}
+
+    public static class Fixed implements LatencyModel {
+        private final long nanos;
+
+        public Fixed(long nanos) {this.nanos = nanos;}
+
+        @Override public long nextNanos(Random random) {return nanos;}
+    }
+
+    public static class Exponential implements LatencyModel {
+        private final long mean;
+
+        public Exponential(long mean) {this.mean = mean;}
+
+        @Override public long nextNanos(Random random) {return (long) (-mean * Math.log(1 - random.nextDouble()));}
+    }
+
+    // long right tail around a median, the usual shape of measured service times
+    public static class LogNormal implements LatencyModel {
+        private final double mu, sigma;
+
+        public LogNormal(long median, double sigma) {
+            this.mu = Math.log(median);
+            this.sigma = sigma;
+        }
+
+        @Override public long nextNanos(Random random) {return (long) Math.exp(mu + sigma * random.nextGaussian());}
+    }
+
+    public static class Trace implements LatencyModel {
+        private final long[] samples;
+        private final AtomicInteger cursor = new AtomicInteger();
+
+        public Trace(long[] samples) {
+            if(samples.length == 0)
+                throw new IllegalArgumentException("empty latency trace");
+            this.samples = samples;
+        }
+
+        public static Trace load(Path file) {
+            try {
+                return new Trace(Files.readAllLines(file).stream()
+                        .map(String::trim)
+                        .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                        .mapToLong(LatencyModel::millis)
+                        .toArray());
+            } catch(IOException e) {
+                throw new UncheckedIOException("cannot read latency trace " + file, e);
+            }
+        }
+
+        @Override public long nextNanos(Random random) {return samples[Math.floorMod(cursor.getAndIncrement(), samples.length)];}
+    }
+}
@@ -0,0 +1,174 @@
+package reactivepipe.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+// bounded lock-free queue for many producers (the callbacks of the previous stage) and ONE consumer (the stage's worker
+// thread, or whichever thread holds the drain guard in VIRTUAL mode), slots are preallocated so nothing is allocated per item
+public class MpscRingBuffer<E> extends java.util.AbstractQueue<E> implements BlockingQueue<E> {
+    // a producer facing a full ring spins this many times, then parks for doubling intervals up to MAX_PARK_NANOS, the
+    // consumer never unparks producers so every park is timed
+    private static final int SPINS = 64;
+    private static final long MIN_PARK_NANOS = 1L << 10, MAX_PARK_NANOS = 1L << 20;
+
+    private final int capacity, mask;
+    private final AtomicReferenceArray<E> slots;
+    // sequence per slot: == position when free for that producer, == position + 1 once published for the consumer
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+    // the consumer parked in take()/poll(timeout), producers unpark it after publishing
+    private volatile Thread waiter;
+
+    public MpscRingBuffer(int requestedCapacity) {
+        this.capacity = Integer.highestOneBit(Math.max(2, requestedCapacity - 1)) << 1;
+        this.mask = capacity - 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        for(int i = 0; i < capacity; i++)
+            sequences.set(i, i);
+    }
+
+    @Override public boolean offer(E e) {
+        if(e == null)
+            throw new NullPointerException();
+        long position;
+        while(true) {
+            position = tail.get();
+            long diff = sequences.get((int) position & mask) - position;
+            if(diff == 0) {
+                if(tail.compareAndSet(position, position + 1))
+                    break;      // slot claimed
+            } else if(diff < 0) {
+                return false;   // full, the consumer has not freed this slot yet
+            }
+            // another producer claimed it first, retry with the new tail
+        }
+        int index = (int) position & mask;
+        slots.set(index, e);
+        sequences.set(index, position + 1);
+        Thread w = waiter;
+        if(w != null)
+            LockSupport.unpark(w);
+        return true;
+    }
+
+    // single consumer only
+    @Override public E poll() {
+        long h = head;
+        int index = (int) h & mask;
+        if(sequences.get(index) != h + 1)
+            return null;
+        E e = slots.get(index);
+        slots.lazySet(index, null);
+        sequences.set(index, h + capacity);     // free for the producer one lap ahead
+        head = h + 1;
+        return e;
+    }
+
+    @Override public E peek() {
+        long h = head;
+        int index = (int) h & mask;
+        return sequences.get(index) == h + 1 ? slots.get(index) : null;
+    }
+
+    @Override public E take() throws InterruptedException {
+        E e;
+        while((e = poll(Long.MAX_VALUE, TimeUnit.NANOSECONDS)) == null);
+        return e;
+    }
+
+    @Override public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        E e = poll();
+        if(e != null)
+            return e;
+        long remaining = unit.toNanos(timeout), deadline = System.nanoTime() + remaining;
+        waiter = Thread.currentThread();
+        try {
+            // re-checked after announcing the waiter, a producer publishing in between either sees it or is seen here
+            while((e = poll()) == null) {
+                if(Thread.interrupted())
+                    throw new InterruptedException();
+                if(remaining <= 0)
+                    return null;
+                LockSupport.parkNanos(this, remaining);
+                remaining = deadline - System.nanoTime();
+            }
+            return e;
+        } finally {
+            waiter = null;
+        }
+    }
+
+    @Override public void put(E e) throws InterruptedException {
+        for(int attempt = 0; !offer(e); attempt++) {
+            if(Thread.interrupted())
+                throw new InterruptedException();
+            backoff(attempt, Long.MAX_VALUE);
+        }
+    }
+
+    @Override public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for(int attempt = 0; !offer(e); attempt++) {
+            if(Thread.interrupted())
+                throw new InterruptedException();
+            long remaining = deadline - System.nanoTime();
+            if(remaining <= 0)
+                return false;
+            backoff(attempt, remaining);
+        }
+        return true;
+    }
+
+    private static void backoff(int attempt, long remaining) {
+        if(attempt < SPINS) {
+            Thread.onSpinWait();
+            return;
+        }
+        long park = MIN_PARK_NANOS << Math.min(attempt - SPINS, 10);
+        LockSupport.parkNanos(Math.min(remaining, Math.min(park, MAX_PARK_NANOS)));
+    }
+
+    @Override public int drainTo(Collection<? super E> c) {return drainTo(c, Integer.MAX_VALUE);}
+
+    @Override public int drainTo(Collection<? super E> c, int maxElements) {
+        int n = 0;
+        E e;
+        while(n < maxElements && (e = poll()) != null) {
+            c.add(e);
+            n++;
+        }
+        return n;
+    }
+
+    // claimed slots count even before their item is published, good enough for gauges and emptiness checks
+    @Override public int size() {return (int) Math.max(0, Math.min(capacity, tail.get() - head));}
+
+    @Override public int remainingCapacity() {return capacity - size();}
+
+    // weakly consistent snapshot of the published items between head and tail, a slot is only taken when its sequence is
+    // the same before and after reading it (not consumed or reused meanwhile); the iterator does not support remove
+    @Override public Iterator<E> iterator() {
+        long h = head, t = tail.get();
+        List<E> snapshot = new ArrayList<>((int) Math.max(0, Math.min(capacity, t - h)));
+        for(long position = Math.max(h, t - capacity); position < t; position++) {
+            int index = (int) position & mask;
+            if(sequences.get(index) != position + 1)
+                continue;       // claimed but not published yet, or already consumed
+            E e = slots.get(index);
+            if(e != null && sequences.get(index) == position + 1)
+                snapshot.add(e);
+        }
+        return Collections.unmodifiableList(snapshot).iterator();
+    }
+}
@@ -1,5 +1,7 @@
 package reactivepipe.model;
 
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 
 import reactivepipe.data.Data;
@@ -7,5 +9,13 @@ import reactivepipe.data.Data;
 public interface Piping {
     public void afterStageCompletes(String Id, Data data);
 
+    public void afterStageCompletes(String Id, List<Data> batch);
+
     public CompletableFuture<Data> startPipeline(Data data);
+
+    // starts a chunk of transactions, an implementation may log all of them before it waits on the log once
+    public default List<CompletableFuture<Data>> startPipelines(List<Data> batch) {return batch.stream().map(this::startPipeline).toList();}
+
+    // continues a transaction recovered from the write-ahead log, by default it runs again from the first stage
+    public default CompletableFuture<Data> resume(Data data, Set<String> completedStages) {return startPipeline(data);}
 }
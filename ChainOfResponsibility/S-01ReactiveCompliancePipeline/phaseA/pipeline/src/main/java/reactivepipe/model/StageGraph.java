@@ -0,0 +1,58 @@
+package reactivepipe.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.Getter;
+
+// DAG of stages built from the nextMap edges, a stage with several successors fans out and one with several predecessors joins
+public class StageGraph {
+    @Getter private final String root;
+    private final Map<String, List<String>> successors;
+    private final Map<String, Integer> indegree = new HashMap<>();
+    // stages grouped by their longest distance from the root, every stage only depends on earlier levels
+    @Getter private final List<List<String>> levels = new ArrayList<>();
+
+    public StageGraph(String root, Map<String, List<String>> edges) {
+        this.root = root;
+        this.successors = edges;
+        edges.forEach((from, to) -> to.forEach(stage -> indegree.merge(stage, 1, Integer::sum)));
+        buildLevels();
+    }
+
+    public List<String> successors(String stage) {return successors.getOrDefault(stage, List.of());}
+
+    public int indegree(String stage) {return indegree.getOrDefault(stage, 0);}
+
+    public boolean isJoin(String stage) {return indegree(stage) > 1;}
+
+    public List<String> joins() {
+        return indegree.entrySet().stream().filter(e -> e.getValue() > 1).map(Map.Entry::getKey).toList();
+    }
+
+    private void buildLevels() {
+        Map<String, Integer> depth = new HashMap<>();
+        Map<String, Integer> remaining = new HashMap<>(indegree);
+        List<String> ready = new ArrayList<>(List.of(root));
+        depth.put(root, 0);
+        int visited = 0;
+        // Kahn's topological order, a stage's depth is one more than its deepest predecessor
+        while(!ready.isEmpty()) {
+            String stage = ready.remove(ready.size() - 1);
+            visited++;
+            int d = depth.get(stage);
+            while(levels.size() <= d)
+                levels.add(new ArrayList<>());
+            levels.get(d).add(stage);
+            for(String next : successors(stage)) {
+                depth.merge(next, d + 1, Math::max);
+                if(remaining.merge(next, -1, Integer::sum) == 0)
+                    ready.add(next);
+            }
+        }
+        if(visited != depth.size())
+            throw new IllegalStateException("stage graph from " + root + " has a cycle or a join fed by an unreachable stage");
+    }
+}
@@ -0,0 +1,244 @@
+package reactivepipe.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PostConstruct;
+import reactivepipe.data.Data;
+import reactivepipe.data.QueueStatus;
+import reactivepipe.database.Activity;
+import reactivepipe.database.ResultStore;
+import reactivepipe.dto.Request;
+import reactivepipe.model.Piping;
+import reactivepipe.utils.Serializer;
+
+// NDJSON in, NDJSON out: request lines are started in chunks as they are parsed, answered with their ids and later with
+// their completions
+@Component
+public class BulkIngestor {
+    private static final int FLUSH_EVERY = 256;
+    private static final long POLL_MS = 10;
+
+    @Autowired private ObjectMapper mapper;
+    @Autowired private Serializer serializer;
+    @Autowired private Piping orchestrator;
+    @Autowired private Activity activity;
+    @Autowired private ResultStore resultStore;
+
+    @Value("${pipeline.bulk.max-in-flight:1000}")
+    private int maxInFlight;
+    // transactions logged together, the write-ahead log is waited on once per chunk instead of once per line
+    @Value("${pipeline.bulk.chunk:64}")
+    private int chunkSize;
+    // how long an upload waits for its last completions once the body is read, what is left is answered with a timeout
+    @Value("${pipeline.bulk.completion-timeout-ms:${pipeline.results.in-flight-ttl-ms:120000}}")
+    private long completionTimeoutMs;
+
+    // shared by every bulk upload, once exhausted the reader stops consuming the body and TCP pushes back on the client
+    private Semaphore permits;
+
+    @PostConstruct
+    public void init() {
+        permits = new Semaphore(maxInFlight);
+    }
+
+    public void ingest(InputStream in, OutputStream out) throws IOException {
+        new Upload(out).run(in);
+    }
+
+    // one request body, only the request thread touches it apart from the completed queue and the outstanding map
+    private final class Upload {
+        private final OutputStream out;
+        // completions arrive on the stage executors and are written by this thread only, a slow client never blocks a stage
+        private final LinkedBlockingQueue<Map<String, Object>> completed = new LinkedBlockingQueue<>();
+        // index -> id of the transactions still running, whoever removes an index answers it and returns its permit
+        private final Map<Integer, String> outstanding = new ConcurrentHashMap<>();
+        // parsed and holding a permit, not started yet
+        private final List<Data> chunk = new ArrayList<>();
+        private int accepted, unflushed;
+
+        private Upload(OutputStream out) {this.out = out;}
+
+        private void run(InputStream body) throws IOException {
+            // the chunk is started before the parser waits on the network, a client sending line by line is not held back
+            InputStream in = new BeforeBlockingRead(body, () -> {
+                start();
+                flush();
+            });
+            try(MappingIterator<Request> requests = mapper.readerFor(Request.class).readValues(in)) {
+                while(requests.hasNextValue()) {
+                    Request req = requests.nextValue();
+                    if(!permits.tryAcquire()) {
+                        start();    // the chunk already holds its permits, it runs while this one is waited for
+                        while(!permits.tryAcquire(POLL_MS, TimeUnit.MILLISECONDS)) {
+                            drain();
+                            flush();
+                        }
+                    }
+                    Data data = new Data();
+                    data.setTransactionID(serializer.generateTransactionID(accepted + chunk.size()));   // spread over the lanes, not pinned to this thread's
+                    data.setAmount(req.getAmount());
+                    chunk.add(data);
+                    if(chunk.size() == chunkSize)
+                        start();
+                }
+                start();
+            } catch(JsonProcessingException e) {
+                // malformed line: no resync inside a JSON stream, stop reading but still start and report what was accepted
+                start();
+                Map<String, Object> error = event("error", accepted, null);
+                error.put("error", e.getOriginalMessage());
+                write(error);
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                // a chunk never started still holds its permits, an aborted or reset upload must hand them back
+                permits.release(chunk.size());
+                chunk.clear();
+            }
+            flush();
+            awaitCompletions();
+        }
+
+        private void start() throws IOException {
+            if(chunk.isEmpty())
+                return;
+            List<CompletableFuture<Data>> futures = orchestrator.startPipelines(chunk);
+            // every started transaction gets its hook before the first write, a failing write must not strand a permit
+            int first = accepted;
+            List<String> ids = new ArrayList<>(chunk.size());
+            for(int i = 0; i < chunk.size(); i++) {
+                int index = first + i;
+                String id = chunk.get(i).getTransactionID();
+                ids.add(id);
+                outstanding.put(index, id);
+                futures.get(i).whenComplete((result, ex) -> {
+                    if(outstanding.remove(index) != null) {
+                        completed.add(completion(index, id, result, ex));
+                        permits.release();
+                    }
+                });
+            }
+            accepted += chunk.size();
+            chunk.clear();
+            for(int i = 0; i < ids.size(); i++)
+                write(event("accepted", first + i, ids.get(i)));
+            drain();
+            if(unflushed >= FLUSH_EVERY)
+                flush();
+        }
+
+        private void awaitCompletions() throws IOException {
+            long deadline = System.currentTimeMillis() + completionTimeoutMs;
+            try {
+                while(!outstanding.isEmpty() && System.currentTimeMillis() < deadline) {
+                    Map<String, Object> next = completed.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                    if(next == null)
+                        continue;
+                    write(next);
+                    drain();
+                    flush();
+                }
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            drain();
+            // still running at the deadline: answered with a timeout, their permits go back so other uploads can proceed
+            for(Integer index : outstanding.keySet()) {
+                String id = outstanding.remove(index);
+                if(id != null) {
+                    write(event("timeout", index, id));
+                    permits.release();
+                }
+            }
+            flush();
+        }
+
+        private void drain() throws IOException {
+            Map<String, Object> next;
+            while((next = completed.poll()) != null)
+                write(next);
+        }
+
+        private void write(Map<String, Object> event) throws IOException {
+            out.write(mapper.writeValueAsBytes(event));
+            out.write('\n');
+            unflushed++;
+        }
+
+        private void flush() throws IOException {
+            out.flush();
+            unflushed = 0;
+        }
+    }
+
+    private Map<String, Object> completion(int index, String id, Data result, Throwable ex) {
+        Map<String, Object> event = event("completed", index, id);
+        if(ex != null) {
+            event.put("status", "FAILED");
+            event.put("error", String.valueOf(ex.getMessage()));
+            return event;
+        }
+        event.put("status", activity.get(id) == QueueStatus.BACKPRESSURE_FAILURE ? QueueStatus.BACKPRESSURE_FAILURE.toString() : "COMPLETED");
+        event.put("amount", result.getAmount());
+        event.put("logs", result.getLogs());
+        resultStore.markFetched(id);    // delivered on the stream, no need to keep it for polling
+        return event;
+    }
+
+    private Map<String, Object> event(String name, int index, String id) {
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("event", name);
+        event.put("index", index);
+        if(id != null)
+            event.put("transactionID", id);
+        return event;
+    }
+
+    // runs the hook before a read that may block, the parser only reads once its own buffer is used up
+    private static final class BeforeBlockingRead extends FilterInputStream {
+        private final IORunnable hook;
+
+        private BeforeBlockingRead(InputStream in, IORunnable hook) {
+            super(in);
+            this.hook = hook;
+        }
+
+        @Override public int read() throws IOException {
+            if(in.available() == 0)
+                hook.run();
+            return in.read();
+        }
+
+        @Override public int read(byte[] b, int off, int len) throws IOException {
+            if(in.available() == 0)
+                hook.run();
+            return in.read(b, off, len);
+        }
+    }
+
+    private interface IORunnable {
+        void run() throws IOException;
+    }
+}
@@ -1,6 +1,9 @@
 package reactivepipe.service;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -9,60 +12,169 @@ import lombok.Setter;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
 import reactivepipe.data.Data;
+import reactivepipe.database.Activity;
+import reactivepipe.database.ResultStore;
+import reactivepipe.database.WriteAheadLog;
 import reactivepipe.model.Handler;
 import reactivepipe.model.Piping;
+import reactivepipe.model.StageGraph;
+import reactivepipe.utils.Serializer;
 
 @Setter
 @Component
+@ConditionalOnProperty(name = "pipeline.engine", havingValue = "orchestrator", matchIfMissing = true)
 public class Orchestrator implements Piping {
 
     @Autowired
-    @Qualifier("handlerMap")
-    private Map<String, Handler> handlerMap;
+    @Qualifier("lanes")
+    private List<Map<String, Handler>> lanes;
 
     @Autowired
-    @Qualifier("nextMap")
-    private Map<String, String> nextMap;
+    @Qualifier("stageGraph")
+    private StageGraph stageGraph;
 
-    private final ConcurrentHashMap<String, CompletableFuture<Data>> futureMap = new ConcurrentHashMap<>();
+    @Autowired private ResultStore resultStore;
+    @Autowired private Activity activity;
+    @Autowired private WriteAheadLog wal;
+
+    // branches that already reached a join stage, keyed by "transactionID/stage"
+    private final ConcurrentHashMap<String, List<Data>> arrivals = new ConcurrentHashMap<>();
 
     @PostConstruct
     public void initCallbacks() {
-        handlerMap.forEach((id, handler) -> {
+        lanes.forEach(handlerMap -> handlerMap.forEach((id, handler) -> {
             // attaching the callback function for each handler analogous to (x, y) -> this.afterStageCompletes(id, y)
             handler.setCallback(this::afterStageCompletes);
-        });
+            handler.setBatchCallback(this::afterStageCompletes);
+        }));
     }
 
     @Override
     public CompletableFuture<Data> startPipeline(Data data) {
-        CompletableFuture<Data> future = new CompletableFuture<>();
-        futureMap.put(data.getTransactionID(), future);
-        Handler head = handlerMap.get("auth");   // pipeline entry point
-        head.enqueue(data);
-        return future;
+        return startPipelines(List.of(data)).get(0);
+    }
+
+    @Override
+    public List<CompletableFuture<Data>> startPipelines(List<Data> batch) {
+        List<CompletableFuture<Data>> futures = new ArrayList<>(batch.size());
+        List<Data> accepted = new ArrayList<>(batch.size());
+        long sequence = 0;
+        for (Data data : batch) {
+            data.setCreatedAt(System.nanoTime());
+            CompletableFuture<Data> future = resultStore.register(data.getTransactionID());
+            futures.add(future);
+            if (future.isDone())
+                continue;       // result store full, refused before anything was logged
+            sequence = wal.begin(data);
+            accepted.add(data);
+        }
+        wal.awaitDurable(sequence);     // an accepted transaction survives a restart, one force covers the whole chunk
+        for (Data data : accepted)
+            lane(data).get(stageGraph.getRoot()).enqueue(data);     // pipeline entry point
+        return futures;
     }
 
     @Override
     public void afterStageCompletes(String handlerId, Data data) {
-        String nextStage = nextMap.get(handlerId);
-        if (nextStage != null) {
-            Handler nextHandler = handlerMap.get(nextStage);
+        // another branch already ended the transaction (e.g. it was rejected with backpressure)
+        if (resultStore.isDone(data.getTransactionID()))
+            return;
+        if (lanes.get(0).containsKey(handlerId))
+            wal.stage(data.getTransactionID(), handlerId, activity.get(data.getTransactionID()), data.getLogs());
+        List<String> nextStages = stageGraph.successors(handlerId);
+        if (nextStages.isEmpty()) {
+            // pipeline completed
+            complete(data);
+            return;
+        }
+        boolean fanOut = nextStages.size() > 1;
+        for (String nextStage : nextStages) {
+            Handler nextHandler = lane(data).get(nextStage);
+            Data joined = join(nextStage, fanOut ? data.copy() : data);
+            if (nextHandler != null && joined != null)
+                nextHandler.enqueue(joined);
+        }
+    }
+
+    @Override
+    public void afterStageCompletes(String handlerId, List<Data> batch) {
+        List<String> nextStages = stageGraph.successors(handlerId);
+        if (nextStages.size() == 1 && !stageGraph.isJoin(nextStages.get(0))) {
+            Handler nextHandler = batch.isEmpty() ? null : lane(batch.get(0)).get(nextStages.get(0));
             if (nextHandler != null) {
-                nextHandler.enqueue(data);
+                for (Data data : batch)
+                    wal.stage(data.getTransactionID(), handlerId, activity.get(data.getTransactionID()), data.getLogs());
+                nextHandler.enqueueAll(batch);     // single hand-off for the whole batch
                 return;
             }
         }
-        // pipeline completed
-        CompletableFuture<Data> future = futureMap.get(data.getTransactionID());
-        if (future != null)
-            future.complete(data);
+        // fan-out, joins and the end of the pipeline are resolved per transaction
+        for (Data data : batch)
+            afterStageCompletes(handlerId, data);
+    }
+
+    @Override
+    public CompletableFuture<Data> resume(Data data, Set<String> completedStages) {
+        data.setCreatedAt(System.nanoTime());
+        CompletableFuture<Data> future = resultStore.register(data.getTransactionID());
+        if (future.isDone()) {
+            wal.done(data.getTransactionID());     // refused by a full result store, it is not retried on the next start
+            return future;
+        }
+        if (completedStages.isEmpty()) {
+            lane(data).get(stageGraph.getRoot()).enqueue(data);
+            return future;
+        }
+        // re-enter every edge leaving the completed part of the graph, a join counts the branches that already passed
+        for (String stage : completedStages) {
+            List<String> nextStages = stageGraph.successors(stage);
+            if (nextStages.isEmpty()) {
+                complete(data);     // only the final record was lost
+                return future;
+            }
+            for (String nextStage : nextStages) {
+                if (completedStages.contains(nextStage))
+                    continue;
+                Data joined = join(nextStage, data.copy());
+                if (joined != null)
+                    lane(data).get(nextStage).enqueue(joined);
+            }
+        }
+        return future;
+    }
+
+    // a transaction stays in the lane its id routes to from the first stage to the last
+    private Map<String, Handler> lane(Data data) {
+        return lanes.get(Serializer.laneOf(data.getTransactionID(), lanes.size()));
+    }
+
+    // returns the merged transaction once the last branch arrives, null while the join is still waiting
+    private Data join(String stage, Data data) {
+        if (!stageGraph.isJoin(stage))
+            return data;
+        String key = data.getTransactionID() + "/" + stage;
+        List<Data> arrived = arrivals.compute(key, (k, list) -> {
+            List<Data> l = list == null ? new ArrayList<>() : list;
+            l.add(data);
+            return l;
+        });
+        if (arrived.size() < stageGraph.indegree(stage) || !arrivals.remove(key, arrived))
+            return null;
+        Data merged = arrived.get(0);
+        for (int i = 1; i < arrived.size(); i++)
+            merged.merge(arrived.get(i));
+        return merged;
     }
 
-    public Map<String, CompletableFuture<Data>> getFutureMap() {
-        return futureMap;
+    private void complete(Data data) {
+        resultStore.complete(data.getTransactionID(), data);
+        wal.done(data.getTransactionID());
+        // drop branches still waiting at a join of a transaction that ended early
+        for (String stage : stageGraph.joins())
+            arrivals.remove(data.getTransactionID() + "/" + stage);
     }
 }
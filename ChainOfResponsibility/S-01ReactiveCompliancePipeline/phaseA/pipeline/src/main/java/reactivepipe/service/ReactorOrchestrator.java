@@ -0,0 +1,208 @@
+package reactivepipe.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Setter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import reactivepipe.config.StageProperties;
+import reactivepipe.data.Data;
+import reactivepipe.data.QueueStatus;
+import reactivepipe.database.Activity;
+import reactivepipe.database.ResultStore;
+import reactivepipe.database.WriteAheadLog;
+import reactivepipe.metrics.PipelineMetrics;
+import reactivepipe.metrics.StageMetrics;
+import reactivepipe.model.Handler;
+import reactivepipe.model.Piping;
+import reactivepipe.model.StageGraph;
+import reactivepipe.utils.Serializer;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+
+@Setter
+@Component
+@ConditionalOnProperty(name = "pipeline.engine", havingValue = "reactor")
+public class ReactorOrchestrator implements Piping {
+    private static final Logger log = LoggerFactory.getLogger(ReactorOrchestrator.class);
+
+    @Autowired
+    @Qualifier("lanes")
+    private List<Map<String, Handler>> lanes;
+
+    @Autowired
+    @Qualifier("stageGraph")
+    private StageGraph stageGraph;
+
+    @Autowired private ResultStore resultStore;
+    @Autowired private Activity activity;
+    @Autowired private StageProperties stageProperties;
+    @Autowired private PipelineMetrics pipelineMetrics;
+    @Autowired private WriteAheadLog wal;
+
+    @Value("${pipeline.reactor.ingress-buffer:256}")
+    private int ingressBuffer;
+
+    // one ingress sink and Flux per lane, a transaction is routed like the Orchestrator routes it
+    private final List<Sinks.Many<Data>> ingress = new ArrayList<>();
+    private final List<Disposable> subscriptions = new ArrayList<>();
+
+    @PostConstruct
+    public void buildPipeline() {
+        for (Map<String, Handler> handlerMap : lanes) {
+            // bounded ingress, once every stage of the lane is saturated the buffer fills and startPipeline rejects
+            Sinks.Many<Data> sink = Sinks.many().unicast().onBackpressureBuffer(Queues.<Data>get(ingressBuffer).get());
+            ingress.add(sink);
+            subscriptions.add(buildLane(handlerMap, sink.asFlux()).subscribe(this::complete));
+        }
+    }
+
+    private Flux<Data> buildLane(Map<String, Handler> handlerMap, Flux<Data> flux) {
+        // same graph as the Orchestrator, walked level by level from the entry point
+        for (List<String> level : stageGraph.getLevels()) {
+            if (level.size() > 1) {
+                flux = flux.flatMap(data -> runParallel(handlerMap, level, data), concurrency(level));
+                continue;
+            }
+            String id = level.get(0);
+            Handler handler = handlerMap.get(id);
+            int concurrency = stageProperties.reactorConcurrency(id), batchSize = stageProperties.batchSize(id);
+            if (batchSize > 1) {
+                flux = flux.bufferTimeout(batchSize, Duration.ofMillis(Math.max(1, stageProperties.batchWaitMs(id))), true)
+                        .flatMap(batch -> runBatch(handler, batch), concurrency)
+                        .flatMapIterable(batch -> batch);
+            } else {
+                flux = flux.flatMap(data -> runStage(handler, data), concurrency);
+            }
+        }
+        return flux;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        subscriptions.forEach(Disposable::dispose);
+    }
+
+    // independent stages of one level run side by side on copies, their logs are merged when all finish
+    private Mono<Data> runParallel(Map<String, Handler> handlerMap, List<String> level, Data data) {
+        List<Mono<Data>> branches = level.stream().map(id -> runStage(handlerMap.get(id), data.copy())).toList();
+        return Mono.zip(branches, results -> {
+            for (Object result : results)
+                data.merge((Data) result);
+            return data;
+        });
+    }
+
+    private int concurrency(List<String> level) {
+        return level.stream().mapToInt(stageProperties::reactorConcurrency).min().orElse(1);
+    }
+
+    private Mono<Data> runStage(Handler handler, Data data) {
+        StageMetrics metrics = pipelineMetrics.forStage(handler.getHandlerID());
+        return Mono.defer(() -> {
+                    long startedAt = System.nanoTime();
+                    return Mono.fromFuture(handler.performOperation(data))
+                            .doOnNext(x -> metrics.service(System.nanoTime() - startedAt, 1));
+                })
+                .doOnNext(x -> handler.updateState(x.convertToStateData()))
+                .onErrorResume(ex -> {
+                    // the Flux goes on without it, the caller gets the failure instead of waiting on its future forever
+                    fail(handler, data, ex);
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<List<Data>> runBatch(Handler handler, List<Data> batch) {
+        StageMetrics metrics = pipelineMetrics.forStage(handler.getHandlerID());
+        return Mono.defer(() -> {
+                    long startedAt = System.nanoTime();
+                    return Mono.fromFuture(handler.performBatch(batch))
+                            .doOnNext(xs -> metrics.service(System.nanoTime() - startedAt, xs.size()));
+                })
+                .doOnNext(xs -> xs.forEach(x -> handler.updateState(x.convertToStateData())))
+                .onErrorResume(ex -> {
+                    batch.forEach(data -> fail(handler, data, ex));
+                    return Mono.empty();
+                });
+    }
+
+    @Override
+    public CompletableFuture<Data> startPipeline(Data data) {
+        return startPipelines(List.of(data)).get(0);
+    }
+
+    @Override
+    public List<CompletableFuture<Data>> startPipelines(List<Data> batch) {
+        List<CompletableFuture<Data>> futures = new ArrayList<>(batch.size());
+        List<Data> accepted = new ArrayList<>(batch.size());
+        long sequence = 0;
+        for (Data data : batch) {
+            data.setCreatedAt(System.nanoTime());
+            CompletableFuture<Data> future = resultStore.register(data.getTransactionID());
+            futures.add(future);
+            if (future.isDone())
+                continue;       // result store full, refused before anything was logged
+            // stages are not logged, a recovered transaction runs the whole Flux again
+            sequence = wal.begin(data);
+            accepted.add(data);
+        }
+        wal.awaitDurable(sequence);     // one force covers the whole chunk
+        for (Data data : accepted)
+            emit(data);
+        return futures;
+    }
+
+    private void emit(Data data) {
+        Sinks.EmitResult result;
+        // concurrent HTTP threads may race on the sink, only overflow is a real rejection
+        Sinks.Many<Data> sink = ingress.get(Serializer.laneOf(data.getTransactionID(), ingress.size()));
+        while ((result = sink.tryEmitNext(data)) == Sinks.EmitResult.FAIL_NON_SERIALIZED)
+            Thread.onSpinWait();
+        if (result.isFailure()) {
+            pipelineMetrics.forStage("ingress").rejected(1);
+            activity.insertOrUpdate(data.getTransactionID(), QueueStatus.BACKPRESSURE_FAILURE);
+            complete(data);
+        }
+    }
+
+    // stages are chained inside the Flux and never call back, a direct call only finishes the transaction
+    @Override
+    public void afterStageCompletes(String handlerId, Data data) {
+        complete(data);
+    }
+
+    @Override
+    public void afterStageCompletes(String handlerId, List<Data> batch) {
+        for (Data data : batch)
+            complete(data);
+    }
+
+    private void complete(Data data) {
+        resultStore.complete(data.getTransactionID(), data);
+        wal.done(data.getTransactionID());
+    }
+
+    private void fail(Handler handler, Data data, Throwable ex) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        log.warn("Stage {} failed transaction {}", handler.getHandlerID(), data.getTransactionID(), cause);
+        resultStore.completeExceptionally(data.getTransactionID(), cause);
+        wal.done(data.getTransactionID());
+    }
+}
@@ -0,0 +1,35 @@
+package reactivepipe.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import reactivepipe.database.Activity;
+import reactivepipe.database.WriteAheadLog;
+import reactivepipe.model.Piping;
+import reactivepipe.utils.Serializer;
+
+// puts the transactions left unfinished by the last run back into the pipeline once every stage is started, with the
+// stages they passed and the logs those stages wrote (the reactor engine logs no stages and runs them all again)
+@Component
+public class Recovery {
+    @Autowired private WriteAheadLog wal;
+    @Autowired private Piping orchestrator;
+    @Autowired private Activity activity;
+    @Autowired private Serializer serializer;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void resume() {
+        for(WriteAheadLog.Recovered r : wal.recovered()) {
+            String id = r.getData().getTransactionID();
+            serializer.advancePast(id);
+            orchestrator.resume(r.getData(), r.getCompletedStages());
+            // after resume registered it, a stage that already moved on keeps its newer status
+            if(r.getStatus() != null)
+                activity.insertIfAbsent(id, r.getStatus());
+        }
+        if(!wal.recovered().isEmpty())
+            System.out.println("resumed " + wal.recovered().size() + " transactions from the write-ahead log...");
+    }
+}
@@ -0,0 +1,178 @@
+package reactivepipe.service;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter.SseEventBuilder;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import reactivepipe.data.Data;
+import reactivepipe.data.QueueStatus;
+import reactivepipe.database.Activity;
+import reactivepipe.database.ResultStore;
+
+@Component
+public class ResultPublisher {
+    @Autowired private Activity activity;
+    @Autowired private ResultStore resultStore;
+    @Autowired private MeterRegistry registry;
+
+    @Value("${pipeline.stream.timeout-ms:120000}")
+    private long timeoutMs;
+    @Value("${pipeline.stream.buffer:256}")
+    private int bufferSize;
+    @Value("${pipeline.stream.threads:2}")
+    private int threads;
+
+    // transaction id -> open streams following it, looked up on every stage transition
+    private final Map<String, Set<Subscription>> followers = new ConcurrentHashMap<>();
+    // writes to the clients, the stage threads only enqueue so a stalled connection never holds one of them
+    private ExecutorService writer;
+    private Counter dropped;
+
+    private class Subscription {
+        private final SseEmitter emitter = new SseEmitter(timeoutMs);
+        private final List<String> ids;
+        private final AtomicInteger remaining;
+        private final LinkedBlockingQueue<SseEventBuilder> pending = new LinkedBlockingQueue<>(bufferSize);
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile boolean finished, closed;
+
+        private Subscription(List<String> ids) {
+            this.ids = ids;
+            this.remaining = new AtomicInteger(ids.size());
+        }
+
+        private void send(String event, Object body) {
+            if(closed)
+                return;
+            if(!pending.offer(SseEmitter.event().name(event).data(body))) {
+                // the client reads slower than the pipeline produces, it is cut off instead of buffered without bound
+                dropped.increment();
+                close();
+                emitter.completeWithError(new IllegalStateException("stream subscriber too slow"));
+                return;
+            }
+            schedule();
+        }
+
+        private void finished() {
+            if(remaining.decrementAndGet() == 0) {
+                finished = true;
+                schedule();
+            }
+        }
+
+        private void schedule() {
+            if(draining.compareAndSet(false, true))
+                writer.execute(this::drain);
+        }
+
+        // one drain per subscription at a time keeps its events in order, the re-check catches what arrived meanwhile
+        private void drain() {
+            do {
+                SseEventBuilder next;
+                while(!closed && (next = pending.poll()) != null) {
+                    try {
+                        emitter.send(next);
+                    } catch(IOException | IllegalStateException e) {
+                        close();    // client went away, stop following its ids
+                    }
+                }
+                if(finished && !closed && pending.isEmpty()) {
+                    close();
+                    emitter.complete();
+                }
+                draining.set(false);
+            } while(!closed && (finished || !pending.isEmpty()) && draining.compareAndSet(false, true));
+        }
+
+        private void close() {
+            closed = true;
+            pending.clear();
+            ids.forEach(id -> followers.computeIfPresent(id, (k, subs) -> {
+                subs.remove(this);
+                return subs.isEmpty() ? null : subs;
+            }));
+        }
+    }
+
+    @PostConstruct
+    public void listen() {
+        writer = Executors.newFixedThreadPool(threads);
+        dropped = Counter.builder("pipeline.stream.dropped").register(registry);
+        activity.addListener(this::onStatus);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writer.shutdownNow();
+    }
+
+    // one connection follows every id given, it completes once all of them have a final result
+    public SseEmitter follow(List<String> ids) {
+        Subscription sub = new Subscription(ids);
+        sub.emitter.onTimeout(sub::close);
+        sub.emitter.onError(ex -> sub.close());
+        for(String id : ids) {
+            CompletableFuture<Data> future = resultStore.get(id);
+            if(future == null) {
+                sub.send("unknown", Map.of("transactionID", id));
+                sub.finished();
+                continue;
+            }
+            followers.computeIfAbsent(id, k -> ConcurrentHashMap.newKeySet()).add(sub);
+            QueueStatus current = activity.get(id);
+            if(current != null)
+                sub.send("stage", Map.of("transactionID", id, "status", current.toString()));
+            future.whenComplete((data, ex) -> {
+                followers.computeIfPresent(id, (k, subs) -> {
+                    subs.remove(sub);
+                    return subs.isEmpty() ? null : subs;
+                });
+                if(ex != null)
+                    sub.send("error", Map.of("transactionID", id, "error", String.valueOf(ex.getMessage())));
+                else
+                    sub.send("result", toResult(id, data));
+                resultStore.markFetched(id);
+                sub.finished();
+            });
+        }
+        return sub.emitter;
+    }
+
+    private void onStatus(String id, QueueStatus status) {
+        Set<Subscription> subs = followers.get(id);
+        if(subs == null)
+            return;
+        for(Subscription sub : subs)
+            sub.send("stage", Map.of("transactionID", id, "status", status.toString()));
+    }
+
+    private Map<String, Object> toResult(String id, Data result) {
+        return Map.of(
+                "transactionId", id,
+                "status", activity.get(id) == QueueStatus.BACKPRESSURE_FAILURE ? QueueStatus.BACKPRESSURE_FAILURE.toString() : "COMPLETED",
+                "result", Map.of(
+                    "amount", result.getAmount(),
+                    "logs", result.getLogs()
+                )
+        );
+    }
+}
@@ -0,0 +1,228 @@
+package reactivepipe.service;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import reactivepipe.config.ExecutorConfig;
+import reactivepipe.config.StageProperties;
+import reactivepipe.data.StageMode;
+import reactivepipe.model.AdaptiveLimiter;
+import reactivepipe.model.LatencyModel;
+import reactivepipe.model.StageGraph;
+
+// discrete-event run of the configured pipeline in virtual time: same stage graph, lanes, servers per stage, adaptive
+// limiters and latency models as the live handlers, but nothing sleeps, the clock jumps from one event to the next
+@Component
+public class Simulator {
+    public static final int MAX_TRANSACTIONS = 5_000_000;
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+
+    @Autowired private StageProperties stageProperties;
+
+    @Autowired
+    @Qualifier("stageGraph")
+    private StageGraph stageGraph;
+
+    // one stage of one lane: a pool of servers in front of a FIFO queue, admission through the stage's limiter
+    private static class Station {
+        private final int stage, servers;
+        private final AdaptiveLimiter limiter;
+        private final LatencyModel latency;
+        private final ArrayDeque<long[]> queue = new ArrayDeque<>();    // {transaction, enqueued at}
+        private int busy, maxDepth;
+        private long served, rejected, waitNanos;
+
+        private Station(int stage, int servers, AdaptiveLimiter limiter, LatencyModel latency) {
+            this.stage = stage;
+            this.servers = servers;
+            this.limiter = limiter;
+            this.latency = latency;
+        }
+    }
+
+    private static class Event implements Comparable<Event> {
+        private final long time, seq, service;
+        private final int tx;
+        private final Station station;     // null for a new arrival
+
+        private Event(long time, long seq, int tx, Station station, long service) {
+            this.time = time;
+            this.seq = seq;
+            this.tx = tx;
+            this.station = station;
+            this.service = service;
+        }
+
+        @Override public int compareTo(Event o) {
+            int c = Long.compare(time, o.time);
+            return c != 0 ? c : Long.compare(seq, o.seq);
+        }
+    }
+
+    // state of one run, the component itself stays stateless so runs may overlap
+    private class Run {
+        private final List<String> stages = stageGraph.getLevels().stream().flatMap(List::stream).toList();
+        private final Map<String, Integer> index = new HashMap<>();
+        private final int lanes = stageProperties.getLanes();
+        private final Station[] stations = new Station[lanes * stages.size()];
+        private final int[][] joinArrivals = new int[stages.size()][];
+        private final PriorityQueue<Event> events = new PriorityQueue<>();
+        private final Random random;
+        private final long[] arrivedAt, latencies;
+        private final boolean[] ended;
+        private long seq, now;
+        private int completed, rejected;
+
+        private Run(int transactions, long seed) {
+            random = new Random(seed);
+            arrivedAt = new long[transactions];
+            latencies = new long[transactions];
+            ended = new boolean[transactions];
+            boolean virtual = stageProperties.getMode() == StageMode.VIRTUAL;
+            for(int s = 0; s < stages.size(); s++) {
+                String id = stages.get(s);
+                index.put(id, s);
+                if(stageGraph.isJoin(id))
+                    joinArrivals[s] = new int[transactions];
+                int servers = virtual ? stageProperties.concurrency(id) : ExecutorConfig.threads(id);
+                for(int lane = 0; lane < lanes; lane++)
+                    stations[lane * stages.size() + s] = new Station(s, servers, stageProperties.limiter(id), stageProperties.latency(id));
+            }
+        }
+
+        private void schedule(long time, int tx, Station station, long service) {events.add(new Event(time, seq++, tx, station, service));}
+
+        private Station station(int tx, int stage) {return stations[(tx % lanes) * stages.size() + stage];}
+
+        private void offer(Station st, int tx) {
+            if(!st.limiter.tryAcquire()) {
+                st.rejected++;
+                if(!ended[tx])
+                    rejected++;
+                ended[tx] = true;     // BACKPRESSURE_FAILURE, any other branch of it is dropped at its next hand-off
+                return;
+            }
+            st.queue.add(new long[]{tx, now});
+            st.maxDepth = Math.max(st.maxDepth, st.queue.size());
+            startService(st);
+        }
+
+        private void startService(Station st) {
+            while(st.busy < st.servers && !st.queue.isEmpty()) {
+                long[] next = st.queue.poll();
+                st.waitNanos += now - next[1];
+                st.busy++;
+                long service = st.latency.nextNanos(random);
+                schedule(now + service, (int) next[0], st, service);
+            }
+        }
+
+        private void finish(Station st, int tx, long service) {
+            st.busy--;
+            st.served++;
+            st.limiter.onSample(service);
+            st.limiter.release();
+            if(!ended[tx])
+                route(st.stage, tx);
+            startService(st);
+        }
+
+        private void route(int stage, int tx) {
+            List<String> next = stageGraph.successors(stages.get(stage));
+            if(next.isEmpty()) {
+                ended[tx] = true;
+                latencies[completed++] = now - arrivedAt[tx];
+                return;
+            }
+            for(String id : next) {
+                if(ended[tx])
+                    return;
+                int s = index.get(id);
+                if(joinArrivals[s] != null && ++joinArrivals[s][tx] < stageGraph.indegree(id))
+                    continue;       // waits for the other branches
+                offer(station(tx, s), tx);
+            }
+        }
+
+        private void run(int transactions, double ratePerSecond) {
+            double meanGap = TimeUnit.SECONDS.toNanos(1) / ratePerSecond;
+            int root = index.get(stageGraph.getRoot()), arrived = 0;
+            schedule(0, 0, null, 0);
+            while(!events.isEmpty()) {
+                Event e = events.poll();
+                now = e.time;
+                if(e.station != null) {
+                    finish(e.station, e.tx, e.service);
+                    continue;
+                }
+                // Poisson arrivals, the next one is only scheduled once this one is in so the event queue stays small
+                arrivedAt[e.tx] = now;
+                offer(station(e.tx, root), e.tx);
+                if(++arrived < transactions)
+                    schedule(now + (long) (-meanGap * Math.log(1 - random.nextDouble())), arrived, null, 0);
+            }
+        }
+
+        private Map<String, Object> report(int transactions, double ratePerSecond, long wallNanos) {
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("transactions", transactions);
+            report.put("arrivalRatePerSecond", ratePerSecond);
+            report.put("completed", completed);
+            report.put("rejected", rejected);
+            report.put("simulatedSeconds", now / 1e9);
+            report.put("wallMillis", wallNanos / 1_000_000);
+            long[] sorted = Arrays.copyOf(latencies, completed);
+            Arrays.sort(sorted);
+            Map<String, Object> latency = new LinkedHashMap<>();
+            if(completed > 0) {
+                latency.put("mean", Arrays.stream(sorted).average().orElse(0) / 1e6);
+                for(double p : PERCENTILES)
+                    latency.put("p" + String.valueOf(p * 100).replace(".0", ""), sorted[(int) Math.min(completed - 1, Math.ceil(p * completed) - 1)] / 1e6);
+                latency.put("max", sorted[completed - 1] / 1e6);
+            }
+            report.put("latencyMs", latency);
+            Map<String, Object> perStage = new LinkedHashMap<>();
+            for(int s = 0; s < stages.size(); s++) {
+                long served = 0, rejectedHere = 0, wait = 0;
+                int maxDepth = 0, limit = 0;
+                for(int lane = 0; lane < lanes; lane++) {
+                    Station st = stations[lane * stages.size() + s];
+                    served += st.served;
+                    rejectedHere += st.rejected;
+                    wait += st.waitNanos;
+                    maxDepth = Math.max(maxDepth, st.maxDepth);
+                    limit += st.limiter.getLimit();
+                }
+                Map<String, Object> stats = new LinkedHashMap<>();
+                stats.put("served", served);
+                stats.put("rejected", rejectedHere);
+                stats.put("meanQueueWaitMs", served == 0 ? 0 : wait / 1e6 / served);
+                stats.put("maxQueueDepth", maxDepth);
+                stats.put("finalLimit", limit);
+                perStage.put(stages.get(s), stats);
+            }
+            report.put("stages", perStage);
+            return report;
+        }
+    }
+
+    public Map<String, Object> run(int transactions, double ratePerSecond, long seed) {
+        if(transactions <= 0 || transactions > MAX_TRANSACTIONS || ratePerSecond <= 0)
+            throw new IllegalArgumentException("transactions must be in 1.." + MAX_TRANSACTIONS + " and the rate positive");
+        long startedAt = System.nanoTime();
+        Run run = new Run(transactions, seed);
+        run.run(transactions, ratePerSecond);
+        return run.report(transactions, ratePerSecond, System.nanoTime() - startedAt);
+    }
+}
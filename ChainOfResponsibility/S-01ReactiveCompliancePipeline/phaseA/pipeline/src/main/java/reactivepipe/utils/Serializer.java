@@ -1,14 +1,66 @@
 package reactivepipe.utils;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import jakarta.annotation.PostConstruct;
+import reactivepipe.config.StageProperties;
+
+// ids are "transaction" + n with n = seq * lanes + lane + 1, so the lane is n - 1 mod lanes and a single lane counts 1, 2, 3...
 @Component
 public class Serializer {
-    private int index = 0;
     private static final String WORD = "transaction";
+    private static final int STRIDE = 8;    // one counter per 64-byte cache line, lanes never write to the same line
+
+    @Autowired private StageProperties stageProperties;
+
+    private int lanes;
+    private AtomicLongArray counters;
+    // every request thread sticks to one lane, assigned round robin, so threads of different lanes never share a counter
+    private final AtomicInteger nextLane = new AtomicInteger();
+    private final ThreadLocal<Integer> threadLane = ThreadLocal.withInitial(() -> Math.floorMod(nextLane.getAndIncrement(), lanes));
+
+    @PostConstruct
+    public void init() {
+        lanes = stageProperties.getLanes();
+        counters = new AtomicLongArray(lanes * STRIDE);
+    }
+
+    public String generateTransactionID() {return generateTransactionID(threadLane.get());}
+
+    // explicit lane (taken mod lanes), for a single thread feeding many transactions
+    public String generateTransactionID(int lane) {
+        lane = Math.floorMod(lane, lanes);
+        long seq = counters.getAndIncrement(lane * STRIDE);
+        return WORD + (seq * lanes + lane + 1);
+    }
+
+    // lane encoded in a generated id, any other id is spread by its hash
+    public static int laneOf(String id, int lanes) {
+        long n = number(id);
+        return n > 0 ? (int) ((n - 1) % lanes) : Math.floorMod(id.hashCode(), lanes);
+    }
+
+    // ids recovered after a restart must not be handed out again
+    public void advancePast(String id) {
+        long n = number(id);
+        if(n <= 0)
+            return;     // not generated here
+        int lane = (int) ((n - 1) % lanes);
+        long next = (n - 1) / lanes + 1;
+        counters.accumulateAndGet(lane * STRIDE, next, Math::max);
+    }
 
-    public String generateTransactionID() {
-        index++;
-        return WORD + index;
+    private static long number(String id) {
+        if(!id.startsWith(WORD))
+            return -1;
+        try {
+            return Long.parseLong(id.substring(WORD.length()));
+        } catch(NumberFormatException e) {
+            return -1;
+        }
     }
 }
@@ -0,0 +1,114 @@
+package reactivepipe.database;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactivepipe.data.Data;
+import reactivepipe.data.QueueStatus;
+
+class WriteAheadLogTest {
+	// header (20) + type, id, empty stage, value and log count of a BEGIN with a four character id (15)
+	private static final int BEGIN_RECORD = 35;
+
+	@TempDir Path dir;
+
+	@Test
+	void resumesUnfinishedTransactionsWithTheirStagesAndLogs() throws Exception {
+		Path file = dir.resolve("pipeline.wal");
+		WriteAheadLog wal = open(file, 1);
+		wal.begin(data("tx-A", 10));
+		wal.begin(data("tx-B", 20));
+		wal.stage("tx-A", "auth", QueueStatus.AUTH, Map.of("auth", "ok"));
+		wal.awaitDurable(wal.done("tx-B"));
+		wal.close();
+
+		List<WriteAheadLog.Recovered> recovered = open(file, 1).recovered();
+		assertEquals(1, recovered.size());
+		WriteAheadLog.Recovered a = recovered.get(0);
+		assertEquals("tx-A", a.getData().getTransactionID());
+		assertEquals(10, a.getData().getAmount());
+		assertEquals(Set.of("auth"), a.getCompletedStages());
+		assertEquals(QueueStatus.AUTH, a.getStatus());
+		assertEquals(Map.of("auth", "ok"), a.getData().getLogs());
+	}
+
+	// an intact record from an earlier run behind the current end of the log must not be replayed
+	@Test
+	void replayStopsAtARecordOfAnOlderGeneration() throws Exception {
+		Path file = dir.resolve("pipeline.wal");
+		WriteAheadLog first = open(file, 1);
+		first.begin(data("tx-A", 1));
+		first.begin(data("tx-B", 2));
+		first.awaitDurable(first.begin(data("tx-C", 3)));
+		first.close();
+		// tear tx-B, the next run replays only tx-A and appends over tx-B, tx-C stays behind it intact
+		try(RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+			raf.seek(BEGIN_RECORD + 25);
+			raf.write(raf.read() ^ 0xff);
+		}
+		WriteAheadLog second = open(file, 1);
+		assertEquals(List.of("tx-A"), ids(second.recovered()));
+		second.awaitDurable(second.begin(data("tx-D", 4)));
+		second.close();
+
+		assertEquals(List.of("tx-A", "tx-D"), ids(open(file, 1).recovered()));
+	}
+
+	@Test
+	void compactionKeepsOnlyLiveTransactions() throws Exception {
+		Path file = dir.resolve("pipeline.wal");
+		WriteAheadLog wal = open(file, 1);
+		wal.begin(data("live", 7));
+		wal.stage("live", "kyc", QueueStatus.KYC, Map.of("kyc", "passed"));
+		// enough finished transactions to fill the 1 MB file several times over
+		for(int i = 0; i < 40_000; i++) {
+			String id = String.format("t%05d", i);
+			wal.begin(data(id, i));
+			wal.done(id);
+		}
+		wal.awaitDurable(wal.stage("live", "amt", QueueStatus.AMT, Map.of()));
+		wal.close();
+		assertTrue(Files.size(file) <= 1 << 20, "compaction rewrote the file instead of growing it");
+
+		List<WriteAheadLog.Recovered> recovered = open(file, 1).recovered();
+		assertEquals(List.of("live"), ids(recovered));
+		assertEquals(Set.of("kyc", "amt"), recovered.get(0).getCompletedStages());
+		assertEquals(QueueStatus.AMT, recovered.get(0).getStatus());
+		assertEquals(Map.of("kyc", "passed"), recovered.get(0).getData().getLogs());
+	}
+
+	private static WriteAheadLog open(Path file, int sizeMb) throws IOException {
+		WriteAheadLog wal = new WriteAheadLog();
+		ReflectionTestUtils.setField(wal, "enabled", true);
+		ReflectionTestUtils.setField(wal, "path", file.toString());
+		ReflectionTestUtils.setField(wal, "sizeMb", sizeMb);
+		ReflectionTestUtils.setField(wal, "groupCommitMs", 1L);
+		ReflectionTestUtils.setField(wal, "registry", new SimpleMeterRegistry());
+		wal.open();
+		return wal;
+	}
+
+	private static Data data(String id, int amount) {
+		Data data = new Data();
+		data.setTransactionID(id);
+		data.setAmount(amount);
+		return data;
+	}
+
+	private static List<String> ids(List<WriteAheadLog.Recovered> recovered) {
+		return recovered.stream().map(r -> r.getData().getTransactionID()).toList();
+	}
+}
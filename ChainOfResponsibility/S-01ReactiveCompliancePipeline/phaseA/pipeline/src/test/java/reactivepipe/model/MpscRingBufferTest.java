@@ -0,0 +1,200 @@
+package reactivepipe.model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+class MpscRingBufferTest {
+
+	@Test
+	void capacityIsRoundedUpToAPowerOfTwo() {
+		assertEquals(8, new MpscRingBuffer<Integer>(5).remainingCapacity());
+		assertEquals(8, new MpscRingBuffer<Integer>(8).remainingCapacity());
+	}
+
+	@Test
+	void keepsFifoOrderUntilFull() {
+		MpscRingBuffer<Integer> ring = new MpscRingBuffer<>(4);
+		for(int i = 0; i < 4; i++)
+			assertTrue(ring.offer(i));
+		assertFalse(ring.offer(4));
+		assertEquals(4, ring.size());
+		assertEquals(0, ring.peek());
+		for(int i = 0; i < 4; i++)
+			assertEquals(i, ring.poll());
+		assertNull(ring.poll());
+		assertNull(ring.peek());
+		assertTrue(ring.isEmpty());
+	}
+
+	@Test
+	void reusesSlotsAcrossManyLaps() {
+		MpscRingBuffer<Integer> ring = new MpscRingBuffer<>(4);
+		for(int i = 0; i < 1000; i++) {
+			assertTrue(ring.offer(i));
+			assertTrue(ring.offer(-i));
+			assertEquals(i, ring.poll());
+			assertEquals(-i, ring.poll());
+		}
+		assertTrue(ring.isEmpty());
+	}
+
+	@Test
+	void rejectsNull() {
+		assertThrows(NullPointerException.class, () -> new MpscRingBuffer<Integer>(4).offer(null));
+	}
+
+	@Test
+	void iteratesASnapshotOfTheQueuedItems() {
+		MpscRingBuffer<Integer> ring = new MpscRingBuffer<>(8);
+		for(int i = 1; i <= 8; i++)
+			ring.offer(i);
+		ring.poll();
+		ring.poll();
+		ring.offer(9);
+		Iterator<Integer> it = ring.iterator();
+		ring.offer(10);     // after the snapshot, not part of it
+		List<Integer> seen = new ArrayList<>();
+		it.forEachRemaining(seen::add);
+		assertEquals(List.of(3, 4, 5, 6, 7, 8, 9), seen);
+		assertTrue(ring.contains(10));
+		assertFalse(ring.contains(1));
+		assertArrayEquals(new Object[] {3, 4, 5, 6, 7, 8, 9, 10}, ring.toArray());
+	}
+
+	@Test
+	void iteratorOfAnEmptyRingHasNothing() {
+		MpscRingBuffer<Integer> ring = new MpscRingBuffer<>(4);
+		ring.offer(1);
+		ring.poll();
+		assertFalse(ring.iterator().hasNext());
+	}
+
+	@Test
+	@Timeout(5)
+	void timedOfferGivesUpOnAFullRing() throws InterruptedException {
+		MpscRingBuffer<Integer> ring = full(4);
+		long startedAt = System.nanoTime();
+		assertFalse(ring.offer(5, 20, TimeUnit.MILLISECONDS));
+		assertTrue(System.nanoTime() - startedAt >= TimeUnit.MILLISECONDS.toNanos(20));
+		assertEquals(4, ring.size());
+	}
+
+	@Test
+	@Timeout(5)
+	void putWaitsForTheConsumerToFreeASlot() throws InterruptedException {
+		MpscRingBuffer<Integer> ring = full(4);
+		CountDownLatch done = new CountDownLatch(1);
+		Thread producer = new Thread(() -> {
+			try {
+				ring.put(5);
+				done.countDown();
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		producer.start();
+		assertFalse(done.await(50, TimeUnit.MILLISECONDS));
+		assertEquals(1, ring.poll());
+		assertTrue(done.await(1, TimeUnit.SECONDS));
+		for(int i = 2; i <= 5; i++)
+			assertEquals(i, ring.poll());
+	}
+
+	@Test
+	@Timeout(5)
+	void putOnAFullRingIsInterruptible() throws InterruptedException {
+		MpscRingBuffer<Integer> ring = full(4);
+		AtomicReference<Throwable> thrown = new AtomicReference<>();
+		Thread producer = new Thread(() -> {
+			try {
+				ring.put(5);
+			} catch(InterruptedException e) {
+				thrown.set(e);
+			}
+		});
+		producer.start();
+		Thread.sleep(20);
+		producer.interrupt();
+		producer.join();
+		assertTrue(thrown.get() instanceof InterruptedException);
+		assertEquals(4, ring.size());
+	}
+
+	@Test
+	@Timeout(5)
+	void timedPollReturnsNullWhenNothingArrives() throws InterruptedException {
+		assertNull(new MpscRingBuffer<Integer>(4).poll(20, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	@Timeout(5)
+	void takeIsWokenByAProducer() throws InterruptedException {
+		MpscRingBuffer<Integer> ring = new MpscRingBuffer<>(4);
+		Thread producer = new Thread(() -> {
+			try {
+				Thread.sleep(20);
+			} catch(InterruptedException e) {
+				return;
+			}
+			ring.offer(42);
+		});
+		producer.start();
+		assertEquals(42, ring.take());
+		producer.join();
+	}
+
+	// every producer's items arrive exactly once and in the order it put them, whatever the interleaving
+	@Test
+	@Timeout(30)
+	void manyProducersOneConsumer() throws InterruptedException {
+		int producers = 4, perProducer = 100_000;
+		MpscRingBuffer<long[]> ring = new MpscRingBuffer<>(64);
+		List<Thread> threads = new ArrayList<>();
+		for(int p = 0; p < producers; p++) {
+			int id = p;
+			Thread t = new Thread(() -> {
+				try {
+					for(int i = 0; i < perProducer; i++)
+						ring.put(new long[] {id, i});
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			threads.add(t);
+			t.start();
+		}
+		long[] next = new long[producers];
+		for(int n = 0; n < producers * perProducer; n++) {
+			long[] item = ring.take();
+			assertEquals(next[(int) item[0]]++, item[1]);
+		}
+		for(Thread t : threads)
+			t.join();
+		for(long count : next)
+			assertEquals(perProducer, count);
+		assertNull(ring.poll());
+	}
+
+	// 1..capacity queued, the requested capacity is already a power of two
+	private static MpscRingBuffer<Integer> full(int capacity) {
+		MpscRingBuffer<Integer> ring = new MpscRingBuffer<>(capacity);
+		for(int i = 1; i <= capacity; i++)
+			assertTrue(ring.offer(i));
+		assertFalse(ring.offer(capacity + 1));
+		return ring;
+	}
+}
@@ -4,16 +4,20 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import ticketing.pipeline_reactive.business.queues.TenantManager;
 import ticketing.pipeline_reactive.data.Data;
+import ticketing.pipeline_reactive.data.Page;
+import ticketing.pipeline_reactive.data.enums.AccountType;
 import ticketing.pipeline_reactive.database.Database;
 import ticketing.pipeline_reactive.inputs.Request;
 import ticketing.pipeline_reactive.utils.Serializer;
@@ -26,24 +30,30 @@ public class Controller {
     @Autowired private TenantManager manager;
     @Autowired private Database db;
 
+    @Value("${request.timeout-ms:30000}") private long timeoutMs;
+
     @PostMapping("/task")
     public ResponseEntity<Object> createTask(@RequestBody Request req) {
-        Data data = new Data(req.getName(), req.getAmount(), req.getAccountType());
-        data.setTransactionID(serializer.generateTransactionID());
+        Data data = toData(req);
         manager.attachTicket(data);
         return ResponseEntity.ok().body("Inserted with transaction ID "+data.getTransactionID());
     }
 
     @PostMapping("/task-list")
     public ResponseEntity<Object> createTask(@RequestBody List<Request> reqs) {
-        List<String> ids = new ArrayList<>();
+        List<Data> batch = new ArrayList<>(reqs.size());
         for(Request req : reqs) {
-            Data data = new Data(req.getName(), req.getAmount(), req.getAccountType());
-            data.setTransactionID(serializer.generateTransactionID());
-            manager.attachTicket(data);
-            ids.add(data.getTransactionID());
+            batch.add(toData(req));
         }
-        return ResponseEntity.ok().body("Inserted with transaction IDs "+ids);
+        return ResponseEntity.ok().body(manager.attachTickets(batch));
+    }
+
+    // every request leaves here with its deadline, the stages shed it instead of working on it once it has passed
+    private Data toData(Request req) {
+        Data data = new Data(req.getName(), req.getAmount(), req.getAccountType());
+        data.setTransactionID(serializer.generateTransactionID());
+        data.setDeadline(System.currentTimeMillis() + (req.getTimeoutMs() != null ? req.getTimeoutMs() : timeoutMs));
+        return data;
     }
 
     @GetMapping("/status/{id}")
@@ -52,7 +62,28 @@ public class Controller {
     }
 
     @GetMapping("/all")
-    public ResponseEntity<Object> getAll() {
-        return ResponseEntity.ok().body(db.getAll());
+    public ResponseEntity<Page> getAll(@RequestParam(defaultValue = "0") long cursor, @RequestParam(defaultValue = "100") int limit) {
+        return ResponseEntity.ok().body(db.page(cursor, Math.max(1, Math.min(limit, 1000))));
+    }
+
+    @GetMapping("/account/{type}")
+    public ResponseEntity<List<Data>> getByAccountType(@PathVariable String type, @RequestParam(defaultValue = "100") int limit) {
+        AccountType accountType;
+        try {
+            accountType = AccountType.valueOf(type.toUpperCase());
+        } catch(IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();     // not an account type, a client error and not a 500
+        }
+        return ResponseEntity.ok().body(db.byAccountType(accountType, limit));
+    }
+
+    @GetMapping("/customer/{name}")
+    public ResponseEntity<List<Data>> getByCustomer(@PathVariable String name, @RequestParam(defaultValue = "100") int limit) {
+        return ResponseEntity.ok().body(db.byCustomer(name, limit));
+    }
+
+    @GetMapping("/ticket/{ticket}")
+    public ResponseEntity<Data> getByTicket(@PathVariable String ticket) {
+        return ResponseEntity.ok().body(db.byTicket(ticket));
     }
 }
@@ -1,5 +1,10 @@
 package ticketing.pipeline_reactive.business.queues;
 
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 
@@ -9,10 +14,15 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import ticketing.pipeline_reactive.business.tickets.TicketManager;
+import ticketing.pipeline_reactive.data.Admission;
 import ticketing.pipeline_reactive.data.Data;
 import ticketing.pipeline_reactive.data.enums.AccountType;
+import ticketing.pipeline_reactive.data.enums.Verdict;
 import ticketing.pipeline_reactive.exception.NoTicketException;
 import ticketing.pipeline_reactive.model.Handler;
 import ticketing.pipeline_reactive.service.TenantQueue;
@@ -25,18 +35,27 @@ public class TenantManager implements Runnable {
     @Autowired @Qualifier("auth") private Handler auth;
     @Autowired @Qualifier("kyc") private Handler kyc;
     @Autowired @Qualifier("pay") private Handler pay;
+    @Autowired private MeterRegistry registry;
 
     private final Logger log = LoggerFactory.getLogger(TenantManager.class);
+    private Counter expired;
+    private Thread thread;
 
     // PostConstruct to initialize and start the thread along with the chain od responsibility
     @PostConstruct
     public void init() {
-        Thread thread = new Thread(this, "ticket-and-tenant");
+        expired = Counter.builder("handler.deadline.shed").tag("handler", "tenant").register(registry);
+        thread = new Thread(this, "ticket-and-tenant");
         thread.start();
         auth.next(kyc);
         kyc.next(pay);
     }
 
+    @PreDestroy
+    public void stop() {
+        thread.interrupt();
+    }
+
     public void attachTicket(Data data) {
         // supplier at start to supply data to the future chain
         CompletableFuture.supplyAsync(() -> data).thenApplyAsync(x -> {
@@ -54,7 +73,11 @@ public class TenantManager implements Runnable {
                 else
                     throw new NoTicketException(AccountType.PREMIUM.name());
             }
-            tenantQueue.insert(x);      // Inserting into the queue
+            if(!tenantQueue.insert(x)) {     // Inserting into the queue
+                log.warn("Tenant queue full, transaction ID {} is shed", x.getTransactionID());
+                ticketManager.release(x);
+                return x;
+            }
             log.info("The Data with transaction ID {} and {} ticket {} is dispatched to working queue",x.getTransactionID(),x.getAccountType().name(),x.getTicket());
             return x;
         }, ticketExecutor).whenComplete((x, ex) -> {
@@ -72,12 +95,64 @@ public class TenantManager implements Runnable {
         });
     }
 
+    // bulk path: one bucket and pool operation per account type for the tickets and one tenant queue insert for the whole batch,
+    // runs on the caller's thread and answers with a verdict per request, in the order given
+    public List<Admission> attachTickets(List<Data> batch) {
+        Map<AccountType, Integer> wanted = new EnumMap<>(AccountType.class);
+        for(Data data : batch)
+            wanted.merge(data.getAccountType(), 1, Integer::sum);
+        Map<AccountType, Iterator<String>> tickets = new EnumMap<>(AccountType.class);
+        wanted.forEach((type, n) -> tickets.put(type, ticketManager.getTickets(type, n).iterator()));
+
+        List<Data> ticketed = new ArrayList<>(batch.size());
+        for(Data data : batch) {
+            Iterator<String> granted = tickets.get(data.getAccountType());
+            if(granted.hasNext()) {
+                data.setTicket(granted.next());
+                ticketed.add(data);
+            }
+        }
+        // the queue takes a prefix of the ticketed requests, whatever is past its depth limit is shed
+        int taken = tenantQueue.insertAll(ticketed);
+        for(Data shed : ticketed.subList(taken, ticketed.size()))
+            ticketManager.release(shed);
+
+        List<Admission> verdicts = new ArrayList<>(batch.size());
+        int position = 0;
+        for(Data data : batch) {
+            Verdict verdict = Verdict.NO_TICKET;
+            if(data.getTicket() != null)
+                verdict = position++ < taken ? Verdict.ACCEPTED : Verdict.SHED;
+            verdicts.add(new Admission(data.getTransactionID(), verdict));
+        }
+        log.info("Bulk admission of {} requests, {} dispatched to working queue, {} shed", batch.size(), taken, ticketed.size() - taken);
+        return verdicts;
+    }
+
     @Override public void run() {
         // The "ticket-and-tenant" thread is used for this runnable function, that inserts into the chain
         while(true) {
-            Data data = tenantQueue.extract();      // INFO: blocking extract function
-            Handler head = auth;
-            head.insert(data);
+            Data data;
+            try {
+                data = tenantQueue.extract();       // INFO: blocking extract function
+            } catch(InterruptedException e) {
+                return;     // shutting down, what is still queued is not admitted
+            }
+            try {
+                if(data.expired()) {
+                    // waited out its deadline in the tenant queue, not worth a slot in the chain
+                    expired.increment();
+                    data.getLogs().put("tenant", "shed, deadline passed");
+                    ticketManager.release(data);
+                    continue;
+                }
+                Handler head = auth;
+                head.insert(data);
+            } catch(RuntimeException e) {
+                // one bad request must not take the only admission thread down with it
+                log.error("Admission of transaction ID {} failed, its ticket is released", data.getTransactionID(), e);
+                ticketManager.release(data);
+            }
         }
     }
 }
@@ -1,63 +1,98 @@
 package ticketing.pipeline_reactive.business.tickets;
 
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PostConstruct;
+import ticketing.pipeline_reactive.data.Data;
+import ticketing.pipeline_reactive.data.enums.AccountType;
 
 @Component
 public class TicketManager {
-    @Autowired @Qualifier("basicQueue") private LinkedBlockingQueue<String> basicQueue;
-    @Autowired @Qualifier("premiumQueue") private LinkedBlockingQueue<String> premiumQueue;
-
     @Autowired private TicketGenerator ticketGenerator;
+    @Autowired private MeterRegistry registry;
+
+    // INFO: the bucket bounds how fast a tenant class is admitted (capacity is the burst it can absorb, the initial tokens
+    // keep the early consumers from starvation), the pool how many of its requests can be inside the pipeline at once
+    @Value("${tickets.basic.capacity:100}") private long basicCapacity;
+    @Value("${tickets.basic.per-second:1}") private double basicRate;
+    @Value("${tickets.basic.initial:16}") private long basicInitial;
+    @Value("${tickets.premium.capacity:1000}") private long premiumCapacity;
+    @Value("${tickets.premium.per-second:2}") private double premiumRate;
+    @Value("${tickets.premium.initial:51}") private long premiumInitial;
+    @Value("${tickets.basic.pool-size:100}") private int basicPoolSize;
+    @Value("${tickets.premium.pool-size:1000}") private int premiumPoolSize;
+    @Value("${tickets.lease-ms:120000}") private long leaseMs;
 
     private final Logger log = LoggerFactory.getLogger(TicketManager.class);
-    private final AtomicBoolean basic = new AtomicBoolean(false), premium = new AtomicBoolean(false);
+    private final Map<AccountType, TokenBucket> buckets = new EnumMap<>(AccountType.class);
+    private final Map<AccountType, TicketPool> pools = new EnumMap<>(AccountType.class);
 
     @PostConstruct
-    public void warmUp() {
-        // INFO: Give some initial quotas to the queues, so that the early consumers do not go into starvation
-        for(int i = 0; i <= 15; i++)
-            insertIntoBasic();
-        for(int i = 0; i <= 50; i++)
-            insertIntoPremium();
+    public void init() {
+        register(AccountType.BASIC, new TokenBucket(basicCapacity, basicRate, basicInitial),
+                new TicketPool(basicPoolSize, leaseMs, ticketGenerator::generateBasicTicket));
+        register(AccountType.PREMIUM, new TokenBucket(premiumCapacity, premiumRate, premiumInitial),
+                new TicketPool(premiumPoolSize, leaseMs, ticketGenerator::generatePremiumTicket));
+    }
+
+    // rejected is split by what turned the request away: the rate (empty bucket) or the capacity (no free lease)
+    private void register(AccountType type, TokenBucket bucket, TicketPool pool) {
+        String tag = type.name().toLowerCase();
+        Gauge.builder("tickets.tokens", bucket, TokenBucket::available).tag("account", tag).register(registry);
+        FunctionCounter.builder("tickets.refilled", bucket, TokenBucket::getRefilled).tag("account", tag).register(registry);
+        FunctionCounter.builder("tickets.rejected", bucket, TokenBucket::getRejected).tag("account", tag).tag("reason", "rate").register(registry);
+        Gauge.builder("tickets.available", pool, TicketPool::available).tag("account", tag).register(registry);
+        Gauge.builder("tickets.in-use", pool, TicketPool::getInUse).tag("account", tag).register(registry);
+        FunctionCounter.builder("tickets.acquired", pool, TicketPool::getAcquired).tag("account", tag).register(registry);
+        FunctionCounter.builder("tickets.rejected", pool, TicketPool::getRejected).tag("account", tag).tag("reason", "capacity").register(registry);
+        FunctionCounter.builder("tickets.released", pool, TicketPool::getReleased).tag("account", tag).register(registry);
+        FunctionCounter.builder("tickets.leaked", pool, TicketPool::getLeaked).tag("account", tag).register(registry);
+        buckets.put(type, bucket);
+        pools.put(type, pool);
     }
 
-    public boolean insertIntoBasic() {return basicQueue.offer(ticketGenerator.generateBasicTicket());}
-    public boolean insertIntoPremium() {return premiumQueue.offer(ticketGenerator.generatePremiumTicket());}
+    public String getBasicTicket() {return getTicket(AccountType.BASIC);}
+    public String getPremiumTicket() {return getTicket(AccountType.PREMIUM);}
 
-    private boolean hasBasicTicket() {return !basicQueue.isEmpty();}
-    private boolean hasPremiumTicket() {return !premiumQueue.isEmpty();}
+    private String getTicket(AccountType type) {
+        List<String> tickets = getTickets(type, 1);
+        return tickets.isEmpty() ? null : tickets.get(0);
+    }
 
-    @Scheduled(fixedRate=1000)
-    public void pushBasicIntoTenant() {     // scheduled function
-        if(!insertIntoBasic()) {
-            if(!basic.get()) {
-                log.warn("BASIC Ticket MAX CAP reached");
-                basic.set(true);
-            }
-        } else {basic.set(false);}  
+    // up to n tickets of the account type at once: the bucket grants what the rate allows, the pool leases what the
+    // pipeline has room for, and a token that found no free lease goes back into the bucket
+    public List<String> getTickets(AccountType type, int n) {
+        TokenBucket bucket = buckets.get(type);
+        int allowed = bucket.tryAcquire(n);
+        List<String> tickets = pools.get(type).acquire(allowed);
+        bucket.refund(allowed - tickets.size());
+        return tickets;
     }
 
-    @Scheduled(fixedRate=500)
-    public void pushPremiumIntoTenant() {   // scheduled function
-        if(!insertIntoPremium()) {
-            if(!premium.get()) {
-                log.warn("PREMIUM Ticket MAX CAP reached");
-                premium.set(true);
-            }
-        }
-        else {premium.set(false);}
+    // the request left the pipeline (completed, shed or rejected), its ticket goes back to the pool
+    public void release(Data data) {
+        if(data.getTicket() != null)
+            pools.get(data.getAccountType()).release(data.getTicket());
     }
 
-    public String getBasicTicket() {return hasBasicTicket() ? basicQueue.poll() : null;}
-    public String getPremiumTicket() {return hasPremiumTicket() ? premiumQueue.poll() : null;}
+    @Scheduled(fixedRateString = "${tickets.reclaim-interval-ms:1000}")
+    public void reclaimLeaked() {
+        pools.forEach((type, pool) -> {
+            int reclaimed = pool.reclaimExpired();
+            if(reclaimed > 0)
+                log.warn("{} {} ticket leases expired and were reclaimed", reclaimed, type.name());
+        });
+    }
 }
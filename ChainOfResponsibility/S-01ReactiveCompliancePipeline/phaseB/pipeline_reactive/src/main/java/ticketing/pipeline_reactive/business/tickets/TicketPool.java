@@ -0,0 +1,94 @@
+package ticketing.pipeline_reactive.business.tickets;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// fixed number of tickets leased out to requests: a ticket is held while its request is in the pipeline and returns to
+// the pool when the request ends, or when its lease runs out for a request that never reported back (a leak)
+public class TicketPool {
+    private final int size;
+    private final long leaseMs;
+    private final Supplier<String> names;
+    private final AtomicInteger inUse = new AtomicInteger();
+    // ticket -> lease expiry (epoch millis)
+    private final Map<String, Long> leases = new ConcurrentHashMap<>();
+    private final AtomicLong acquired = new AtomicLong(), rejected = new AtomicLong(), released = new AtomicLong(), leaked = new AtomicLong();
+
+    public TicketPool(int size, long leaseMs, Supplier<String> names) {
+        this.size = size;
+        this.leaseMs = leaseMs;
+        this.names = names;
+    }
+
+    // up to n leases in one step, fewer (or none) when the pool runs short
+    public List<String> acquire(int n) {
+        int granted;
+        while(true) {
+            int current = inUse.get();
+            granted = Math.min(n, size - current);
+            if(granted <= 0) {
+                granted = 0;
+                break;
+            }
+            if(inUse.compareAndSet(current, current + granted))
+                break;
+        }
+        rejected.addAndGet(n - granted);
+        acquired.addAndGet(granted);
+        List<String> tickets = new ArrayList<>(granted);
+        long expiresAt = System.currentTimeMillis() + leaseMs;
+        for(int i = 0; i < granted; i++) {
+            String ticket = names.get();
+            leases.put(ticket, expiresAt);
+            tickets.add(ticket);
+        }
+        return tickets;
+    }
+
+    public String acquire() {
+        List<String> tickets = acquire(1);
+        return tickets.isEmpty() ? null : tickets.get(0);
+    }
+
+    // false when the lease is unknown, already returned or reclaimed as leaked
+    public boolean release(String ticket) {
+        if(leases.remove(ticket) == null)
+            return false;
+        inUse.decrementAndGet();
+        released.incrementAndGet();
+        return true;
+    }
+
+    // reclaims the leases past their expiry, returns how many
+    public int reclaimExpired() {
+        long now = System.currentTimeMillis();
+        int reclaimed = 0;
+        for(Iterator<Map.Entry<String, Long>> it = leases.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<String, Long> lease = it.next();
+            if(lease.getValue() > now || !leases.remove(lease.getKey(), lease.getValue()))
+                continue;
+            inUse.decrementAndGet();
+            leaked.incrementAndGet();
+            reclaimed++;
+        }
+        return reclaimed;
+    }
+
+    public int getInUse() {return inUse.get();}
+
+    public int available() {return size - inUse.get();}
+
+    public long getAcquired() {return acquired.get();}
+
+    public long getRejected() {return rejected.get();}
+
+    public long getReleased() {return released.get();}
+
+    public long getLeaked() {return leaked.get();}
+}
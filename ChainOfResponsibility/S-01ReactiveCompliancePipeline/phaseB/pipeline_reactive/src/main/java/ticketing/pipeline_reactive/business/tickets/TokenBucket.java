@@ -0,0 +1,62 @@
+package ticketing.pipeline_reactive.business.tickets;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// lock-free token bucket, the whole state is one timestamp: the instant at which the bucket was (or will be) empty,
+// the tokens available now are the time elapsed since then divided by the refill interval, capped at the capacity
+public class TokenBucket {
+    private final long capacity, nanosPerToken, initialTokens;
+    private final AtomicLong emptyAt;
+    private final AtomicLong acquired = new AtomicLong(), rejected = new AtomicLong();
+
+    public TokenBucket(long capacity, double tokensPerSecond, long initialTokens) {
+        this.capacity = capacity;
+        this.nanosPerToken = (long) (1_000_000_000L / tokensPerSecond);
+        this.initialTokens = Math.min(capacity, initialTokens);
+        this.emptyAt = new AtomicLong(System.nanoTime() - this.initialTokens * nanosPerToken);
+    }
+
+    // refill happens lazily here, nothing runs between requests
+    public boolean tryAcquire() {return tryAcquire(1) == 1;}
+
+    // takes up to n tokens in one step, returns how many were granted (0 when the bucket is empty)
+    public int tryAcquire(int n) {
+        while(true) {
+            long now = System.nanoTime(), current = emptyAt.get();
+            // a bucket idle for longer than a full refill holds the capacity, not more
+            long base = Math.max(current, now - capacity * nanosPerToken);
+            int granted = (int) Math.min(n, (now - base) / nanosPerToken);
+            if(granted <= 0) {
+                rejected.addAndGet(n);
+                return 0;
+            }
+            if(emptyAt.compareAndSet(current, base + granted * nanosPerToken)) {
+                acquired.addAndGet(granted);
+                rejected.addAndGet(n - granted);
+                return granted;
+            }
+        }
+    }
+
+    // hands back tokens that were granted but not used (no lease was free), they count as never taken
+    public void refund(int n) {
+        if(n <= 0)
+            return;
+        emptyAt.addAndGet(-n * nanosPerToken);
+        acquired.addAndGet(-n);
+    }
+
+    public long available() {
+        long elapsed = System.nanoTime() - emptyAt.get();
+        return elapsed <= 0 ? 0 : Math.min(capacity, elapsed / nanosPerToken);
+    }
+
+    // tokens credited by the refill so far, the ones that would have overflowed a full bucket are not counted
+    public long getRefilled() {return Math.max(0, acquired.get() + available() - initialTokens);}
+
+    public long getAcquired() {return acquired.get();}
+
+    public long getRejected() {return rejected.get();}
+
+    public long getCapacity() {return capacity;}
+}
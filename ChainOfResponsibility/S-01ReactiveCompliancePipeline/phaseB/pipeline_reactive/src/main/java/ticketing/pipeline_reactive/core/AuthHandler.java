@@ -2,7 +2,6 @@ package ticketing.pipeline_reactive.core;
 
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Semaphore;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,69 +26,43 @@ public class AuthHandler extends AbstractQueue implements Handler, Runnable {
     public void init() {
         Thread thread = new Thread(this, "auth-runnable");
         thread.start();
-        Thread healer = new Thread(this::healingLoop, "auth-Healer");
-        healer.start();
-    }
-
-    private void healingLoop() {
-        while(true) {
-            try {
-                if(paused) {
-                    Thread.sleep(waitTime.get());
-                    waitTime.set(Math.min(MAX_WAIT, waitTime.get() * 2));
-                    if (sustained()) {
-                        paused = false;
-                        waitTime.set(INITIAL_WAIT);
-                        log.info("HEALING SUCCESS → handler {} resumed", ID);
-                    }
-                }
-                Thread.sleep(50);
-            } catch(InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-        }
     }
 
     // AbstractQueue function
     @Override public boolean backpressure() {
-        if(!paused) {
-            paused = true;
-            log.warn("BACKPRESSURE -> handler {} paused, waiting for healing...", ID);
-        }
+        pause();
         return false;
     }
 
     // AbstractQueue function
     @Override public boolean sustained() {return burstFactor() < 0.9;}
 
-    Semaphore capacity = new Semaphore(4);      // single permit semaphore (binary semaphore)
-
     @Override public void run() {
         while (true) {
             try {
-                // If paused, do not dequeue
-                if (paused) {
-                    Thread.sleep(50);   // very light async wait
-                    continue;
-                }
-                // check sustained (queue almost full)
-                if (!sustained()) {
-                    backpressure();
+                // keeps draining while paused, only admission stops (see AbstractQueue.insertIntoQueue)
+                capacity.acquire();
+                Data data = takeFromQueue();
+                if(shedIfExpired(data)) {
+                    capacity.release();
                     continue;
                 }
-                capacity.acquire();
-                Data data = queue.take();
+                long startedAt = System.nanoTime();
                 performOperation(data).whenComplete((x, ex) -> {
                     capacity.release();
+                    recordService(System.nanoTime() - startedAt);
                     if (ex != null)
                         log.error("Handler {} error {}", ID, ex.getMessage());
                     if(next() != null) {
                         log.info("Sending data to the next {} Handler",next().getHandlerID());
                         next().insert(data);
+                    } else {
+                        finish(data);
                     }
                 });
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
+                return;
             }
         }
     }
@@ -97,18 +70,15 @@ public class AuthHandler extends AbstractQueue implements Handler, Runnable {
     // Handler function
     @Override public CompletableFuture<Data> performOperation(Data inp) {
         return CompletableFuture.completedFuture(inp).thenApplyAsync(x -> {
-            try {
-                log.info("Auth operation initiated...");
-                db.insert(x.getTransactionID(), x);
-                x.getLogs().put("auth", "operation done");
-                x.setAmount(Math.max(0, x.getAmount() - 100));
-                Thread.sleep(1000);
-                log.info("Auth operation completed...");
-            } catch(InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
+            log.info("Auth operation initiated...");
+            db.insert(x.getTransactionID(), x);
+            x.getLogs().put("auth", "operation done");
+            x.setAmount(Math.max(0, x.getAmount() - 100));
+            return x;
+        }, executor).thenCompose(x -> completeAfter(x, latencyMs, executor)).thenApply(x -> {
+            log.info("Auth operation completed...");
             return x;
-        }, executor).exceptionally(fn -> {
+        }).exceptionally(fn -> {
             if(fn != null)
                 log.info("Error caused in Handler {}, due to {}",ID,fn.getCause());
             return inp;
@@ -0,0 +1,13 @@
+package ticketing.pipeline_reactive.data;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import ticketing.pipeline_reactive.data.enums.Verdict;
+
+// outcome of one request of a bulk admission
+@Getter
+@AllArgsConstructor
+public class Admission {
+    private final String transactionID;
+    private final Verdict verdict;
+}
@@ -14,6 +14,8 @@ public class Data {
     private int amount;
     private AccountType accountType;
     private String ticket;
+    // epoch millis after which the client has given up on the request, 0 means no deadline
+    private long deadline;
     private final LinkedHashMap<String, String> logs;
 
     public Data(String customer, int amount, String accType) {
@@ -24,4 +26,6 @@ public class Data {
         // specifically set null, to ensure it receives ticket when polled from tenantQueue
         this.ticket = null;
     }
+
+    public boolean expired() {return deadline > 0 && System.currentTimeMillis() > deadline;}
 }
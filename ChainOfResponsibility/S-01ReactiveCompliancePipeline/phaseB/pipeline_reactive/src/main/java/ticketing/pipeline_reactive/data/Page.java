@@ -0,0 +1,14 @@
+package ticketing.pipeline_reactive.data;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// one page of /all, nextCursor is null on the last page
+@Getter
+@AllArgsConstructor
+public class Page {
+    private final List<Data> items;
+    private final Long nextCursor;
+}
@@ -0,0 +1,10 @@
+package ticketing.pipeline_reactive.data.enums;
+
+public enum OverflowPolicy {
+    BOUNDED_WAIT, REJECT, DROP_OLDEST, SPILL;
+
+    // property values are written as bounded-wait, reject, drop-oldest or spill
+    public static OverflowPolicy parse(String value) {
+        return valueOf(value.trim().replace('-', '_').toUpperCase());
+    }
+}
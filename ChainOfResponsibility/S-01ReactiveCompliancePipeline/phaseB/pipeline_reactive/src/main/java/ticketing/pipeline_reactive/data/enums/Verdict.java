@@ -0,0 +1,5 @@
+package ticketing.pipeline_reactive.data.enums;
+
+public enum Verdict {
+    ACCEPTED, NO_TICKET, SHED
+}
@@ -1,20 +1,168 @@
 package ticketing.pipeline_reactive.database;
 
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import ticketing.pipeline_reactive.data.Data;
+import ticketing.pipeline_reactive.data.Page;
+import ticketing.pipeline_reactive.data.enums.AccountType;
 
+// concurrent transaction store, every handler writes to it: lookups by id, account type, customer and ticket, pages in
+// insertion order, and a retention window (max-entries, ttl-ms) so it does not grow with the traffic
 @Component
 public class Database {
-    private final Map<String, Data> database = new HashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final ConcurrentHashMap<String, Entry> database = new ConcurrentHashMap<>();
+    // insertion sequence -> id, the cursor of a page is the last sequence it returned
+    private final ConcurrentSkipListMap<Long, String> order = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<AccountType, Set<String>> byAccountType = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<String>> byCustomer = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, String> byTicket = new ConcurrentHashMap<>();
+    private final AtomicLong evictedByTtl = new AtomicLong(), evictedByCapacity = new AtomicLong();
 
-    public void insert(String id, Data data) {database.put(id, data);}
+    @Value("${database.max-entries:10000}") private int maxEntries;
+    @Value("${database.ttl-ms:600000}") private long ttlMs;
 
-    public Data get(String id) {return this.database.get(id);}
+    @Autowired private MeterRegistry registry;
 
-    public List<Data> getAll() {return this.database.values().stream().toList();}
+    private record Entry(long sequence, long insertedAt, Data data) {}
+
+    @PostConstruct
+    public void registerMetrics() {
+        Gauge.builder("database.size", database, ConcurrentHashMap::size).register(registry);
+        FunctionCounter.builder("database.evicted", evictedByTtl, AtomicLong::get).tag("reason", "ttl").register(registry);
+        FunctionCounter.builder("database.evicted", evictedByCapacity, AtomicLong::get).tag("reason", "capacity").register(registry);
+    }
+
+    // every stage inserts the same transaction again, only the first insert takes a place in the order and the indexes
+    public void insert(String id, Data data) {
+        Entry entry = new Entry(sequence.incrementAndGet(), System.currentTimeMillis(), data);
+        if(database.putIfAbsent(id, entry) == null) {
+            order.put(entry.sequence(), id);
+            index(byAccountType, data.getAccountType(), id);
+            index(byCustomer, data.getCustomer(), id);
+            // the ticket is attached before the request enters the chain
+            if(data.getTicket() != null)
+                byTicket.putIfAbsent(data.getTicket(), id);
+            if(database.size() > maxEntries)
+                evictForCapacity();
+        }
+    }
+
+    public Data get(String id) {
+        Entry entry = database.get(id);
+        return entry == null ? null : entry.data();
+    }
+
+    // up to limit transactions inserted after the cursor (0 for the first page), oldest first
+    public Page page(long cursor, int limit) {
+        List<Data> items = new ArrayList<>(Math.min(limit, 1000));
+        long next = cursor;
+        for(Map.Entry<Long, String> e : order.tailMap(cursor, false).entrySet()) {
+            if(items.size() == limit)
+                break;
+            Entry entry = database.get(e.getValue());
+            if(entry == null)
+                continue;       // evicted between the two lookups
+            items.add(entry.data());
+            next = e.getKey();
+        }
+        return new Page(items, items.size() == limit ? next : null);
+    }
+
+    public List<Data> byAccountType(AccountType type, int limit) {return resolve(byAccountType.get(type), limit);}
+
+    public List<Data> byCustomer(String customer, int limit) {return resolve(byCustomer.get(customer), limit);}
+
+    public Data byTicket(String ticket) {
+        String id = byTicket.get(ticket);
+        return id == null ? null : get(id);
+    }
+
+    @Scheduled(fixedRateString = "${database.sweep-interval-ms:1000}")
+    public void sweep() {
+        long cutoff = System.currentTimeMillis() - ttlMs;
+        // the order is by insertion time as well, the sweep stops at the first entry that is still young enough
+        for(Map.Entry<Long, String> e : order.entrySet()) {
+            Entry entry = database.get(e.getValue());
+            if(entry != null && entry.insertedAt() > cutoff)
+                break;
+            if(remove(e.getKey(), e.getValue()))
+                evictedByTtl.incrementAndGet();
+        }
+    }
+
+    private void evictForCapacity() {
+        while(database.size() > maxEntries) {
+            Map.Entry<Long, String> oldest = order.firstEntry();
+            if(oldest == null)
+                return;
+            if(remove(oldest.getKey(), oldest.getValue()))
+                evictedByCapacity.incrementAndGet();
+        }
+    }
+
+    private boolean remove(long seq, String id) {
+        if(!order.remove(seq, id))
+            return false;       // another thread evicted it first
+        Entry entry = database.remove(id);
+        if(entry == null)
+            return false;
+        Data data = entry.data();
+        unindex(byAccountType, data.getAccountType(), id);
+        unindex(byCustomer, data.getCustomer(), id);
+        if(data.getTicket() != null)
+            byTicket.remove(data.getTicket(), id);
+        return true;
+    }
+
+    private List<Data> resolve(Set<String> ids, int limit) {
+        List<Data> items = new ArrayList<>();
+        if(ids == null)
+            return items;
+        for(String id : ids) {
+            if(items.size() == limit)
+                break;
+            Data data = get(id);
+            if(data != null)
+                items.add(data);
+        }
+        return items;
+    }
+
+    // compute runs atomically per key, so a set is never dropped while another thread adds to it; a request without a
+    // customer (or account type) is not indexed under it, ConcurrentHashMap takes no null keys
+    private static <K> void index(ConcurrentHashMap<K, Set<String>> index, K key, String id) {
+        if(key == null)
+            return;
+        index.compute(key, (k, ids) -> {
+            if(ids == null)
+                ids = ConcurrentHashMap.newKeySet();
+            ids.add(id);
+            return ids;
+        });
+    }
+
+    private static <K> void unindex(ConcurrentHashMap<K, Set<String>> index, K key, String id) {
+        if(key == null)
+            return;
+        index.computeIfPresent(key, (k, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
 }
@@ -9,4 +9,6 @@ public class Request {
     private String name;
     private int amount;
     private String accountType;
+    // optional, overrides the default request timeout
+    private Long timeoutMs;
 }
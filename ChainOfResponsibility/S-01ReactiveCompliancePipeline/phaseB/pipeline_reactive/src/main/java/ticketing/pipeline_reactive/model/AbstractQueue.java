@@ -1,11 +1,30 @@
 package ticketing.pipeline_reactive.model;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
+import ticketing.pipeline_reactive.business.tickets.TicketManager;
 import ticketing.pipeline_reactive.data.Data;
+import ticketing.pipeline_reactive.data.enums.OverflowPolicy;
 
 @Getter
 @Setter
@@ -14,30 +33,260 @@ public abstract class AbstractQueue {
     protected final int MAX_WAIT = 20000, INITIAL_WAIT = 3000;
     protected final AtomicInteger waitTime = new AtomicInteger(INITIAL_WAIT);
 
+    // paused stops admission only, the worker keeps draining and resumes the handler once the queue is down to the
+    // low-water mark (handler.<id>.resume-burst); the delayed heal check with the waitTime backoff is the fallback
     protected volatile boolean paused = false;
+    @Getter(AccessLevel.NONE) private final ReentrantLock pauseLock = new ReentrantLock();
+    @Getter(AccessLevel.NONE) private final Condition resumed = pauseLock.newCondition();
+    private static final Logger log = LoggerFactory.getLogger(AbstractQueue.class);
 
     protected LinkedBlockingQueue<Data> queue = new LinkedBlockingQueue<>(QUEUE_SIZE);
 
+    // what insertIntoQueue does with a full queue (handler.<id>.overflow), none of the policies blocks without a bound
+    @Autowired @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE) private Environment env;
+    @Autowired @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE) private MeterRegistry registry;
+    @Autowired @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE) private TicketManager ticketManager;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BOUNDED_WAIT;
+    private long overflowWaitMs;
+    // SPILL only: secondary queue behind the full one, refilled into it as the worker takes
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE) private LinkedBlockingQueue<Data> spill;
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE) private Counter waited, rejected, dropped, spilled, expired;
+    // pause/heal cycle: attempts counts every heal check, successes the ones that resumed the handler
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE) private Counter pauses, healAttempts, healSuccesses;
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE) private Timer pausedTime;
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE) private volatile long pausedAt;
+    // bumped on every pause, a heal check scheduled for an earlier pause finds it changed and stops
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE) private final AtomicInteger pauseEpoch = new AtomicInteger();
+    private double resumeBurst;
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE) private volatile int concurrency;
+
+    // operations in flight (handler.<id>.concurrency), the operations are asynchronous so this and not the pool size bounds
+    // the stage; StageScaler moves permits between handlers, concurrency is the number the semaphore currently stands for
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE) protected Semaphore capacity;
+    // simulated service time of the operation (handler.<id>.latency-ms), waited on a timer rather than a sleeping thread
+    protected long latencyMs;
+    // moving average of dequeue-to-completion time, simulated delay included, since that is how long a permit is held
+    private volatile double serviceMs;
+
+    @PostConstruct
+    public void initStage() {
+        String prefix = "handler." + getHandlerID() + ".";
+        concurrency = env.getProperty(prefix + "concurrency", Integer.class, 64);
+        capacity = new Semaphore(concurrency);
+        latencyMs = env.getProperty(prefix + "latency-ms", Long.class, 1000L);
+        resumeBurst = env.getProperty(prefix + "resume-burst", Double.class, 0.5);
+        overflowPolicy = OverflowPolicy.parse(env.getProperty(prefix + "overflow", "bounded-wait"));
+        overflowWaitMs = env.getProperty(prefix + "overflow-wait-ms", Long.class, 1000L);
+        spill = new LinkedBlockingQueue<>(env.getProperty(prefix + "overflow-capacity", Integer.class, 1000));
+        waited = overflowCounter("waited");
+        rejected = overflowCounter("rejected");
+        dropped = overflowCounter("dropped");
+        spilled = overflowCounter("spilled");
+        expired = Counter.builder("handler.deadline.shed").tag("handler", getHandlerID()).register(registry);
+        Gauge.builder("handler.overflow.spill.depth", spill, LinkedBlockingQueue::size).tag("handler", getHandlerID()).register(registry);
+        registerHealthMetrics();
+    }
+
+    // what QUEUE_SIZE and MAX_WAIT get tuned from: queue fill, pause state and how long the healing takes
+    private void registerHealthMetrics() {
+        String id = getHandlerID();
+        Gauge.builder("handler.queue.depth", queue, LinkedBlockingQueue::size).tag("handler", id).register(registry);
+        Gauge.builder("handler.burst.factor", this, AbstractQueue::burstFactor).tag("handler", id).register(registry);
+        Gauge.builder("handler.paused", this, q -> q.paused ? 1 : 0).tag("handler", id).register(registry);
+        Gauge.builder("handler.heal.wait", waitTime, AtomicInteger::get).tag("handler", id).baseUnit("milliseconds").register(registry);
+        Gauge.builder("handler.concurrency", this, AbstractQueue::getConcurrency).tag("handler", id).register(registry);
+        Gauge.builder("handler.permits.in-use", this, q -> q.concurrency - q.capacity.availablePermits()).tag("handler", id).register(registry);
+        pauses = Counter.builder("handler.pauses").tag("handler", id).register(registry);
+        healAttempts = Counter.builder("handler.heal.attempts").tag("handler", id).register(registry);
+        healSuccesses = Counter.builder("handler.heal.successes").tag("handler", id).register(registry);
+        pausedTime = Timer.builder("handler.paused.time").tag("handler", id).register(registry);
+    }
+
+    private Counter overflowCounter(String outcome) {
+        return Counter.builder("handler.overflow").tag("handler", getHandlerID()).tag("outcome", outcome).register(registry);
+    }
+
+    // expired work is dropped before it takes a queue slot or an operation, the capacity goes to requests that can still succeed
+    protected boolean shedIfExpired(Data data) {
+        if(!data.expired())
+            return false;
+        expired.increment();
+        data.getLogs().put(getHandlerID(), "shed, deadline passed");
+        finish(data);
+        log.warn("Deadline passed, handler {} sheds transaction ID {}", getHandlerID(), data.getTransactionID());
+        return true;
+    }
+
+    // the data leaves the pipeline here (last handler done, or shed, rejected or dropped), its ticket lease is returned
+    protected void finish(Data data) {ticketManager.release(data);}
+
+    // hands one more permit to the worker
+    public void growConcurrency() {
+        concurrency++;
+        capacity.release();
+    }
+
+    // takes a free permit out of circulation, false when every permit is busy (the scaler tries again next tick)
+    public boolean shrinkConcurrency() {
+        if(!capacity.tryAcquire())
+            return false;
+        concurrency--;
+        return true;
+    }
+
+    public int getConcurrency() {return concurrency;}
+
+    protected void recordService(long nanos) {
+        double ms = nanos / 1_000_000.0d;
+        serviceMs = serviceMs == 0 ? ms : serviceMs * 0.8 + ms * 0.2;
+    }
+
     public double burstFactor() {return (queue.size() + 0.0d) / QUEUE_SIZE;}
 
-    public void insertIntoQueue(Data data) {
+    // never blocks longer than the bounded wait, returns false when the data was turned away
+    public boolean insertIntoQueue(Data data) {
+        if(shedIfExpired(data))
+            return false;
+        // a paused handler admits through the overflow policy only, while anything is spilled new data queues behind it
+        boolean inserted = (!paused && spill.isEmpty() && queue.offer(data)) || overflow(data);
+        if(!inserted) {
+            rejected.increment();
+            data.getLogs().put(getHandlerID(), "rejected, queue full");
+            finish(data);
+            System.out.println("[QUEUE FULL] Rejected tx=" + data.getTransactionID() + " policy=" + overflowPolicy);
+            return false;
+        }
+        System.out.println("[QUEUE INSERTED] Inserted tx=" + data.getTransactionID() +" newQueueSize=" + queue.size());
+        // queue-level signal: crossing the threshold pauses the handler right away instead of on the worker's next turn
+        if(!sustained())
+            backpressure();
+        return true;
+    }
+
+    private boolean overflow(Data data) {
+        switch(overflowPolicy) {
+            case REJECT:
+                return false;
+            case DROP_OLDEST:
+                // a paused handler with room left queues the data, only a full queue gives up its oldest for the new one
+                while(!queue.offer(data)) {
+                    Data oldest = queue.poll();
+                    if(oldest != null) {
+                        dropped.increment();
+                        oldest.getLogs().put(getHandlerID(), "dropped, queue full");
+                        finish(oldest);
+                    }
+                }
+                return true;
+            case SPILL:
+                if(!spill.offer(data))
+                    return false;
+                spilled.increment();
+                return true;
+            default:
+                try {
+                    // waits for room, or for the handler to resume when it is paused, never past the bounded wait
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(overflowWaitMs);
+                    if(!awaitResume(deadline) || !queue.offer(data, Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS))
+                        return false;
+                    waited.increment();
+                    return true;
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+        }
+    }
+
+    // completes with the value after the delay on the given executor, no thread is held while the time passes
+    protected <T> CompletableFuture<T> completeAfter(T value, long delayMs, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> value, CompletableFuture.delayedExecutor(delayMs, TimeUnit.MILLISECONDS, executor));
+    }
+
+    // the worker's take, moves spilled data into the space it just freed and resumes a paused handler at the low-water mark
+    protected Data takeFromQueue() throws InterruptedException {
+        Data data = queue.take();
+        Data next = spill.peek();
+        if(next != null && queue.offer(next))
+            spill.remove(next);
+        if(paused && burstFactor() <= resumeBurst)
+            resume("drained to low-water mark");
+        return data;
+    }
+
+    // admission side: waits until the handler is not paused or the deadline (System.nanoTime) passes, true once resumed
+    protected boolean awaitResume(long deadline) throws InterruptedException {
+        if(!paused)
+            return true;
+        pauseLock.lock();
         try {
-            // Log BEFORE blocking
-            if (queue.size() == QUEUE_SIZE) {
-                System.out.println("[QUEUE FULL] Handler queue is full. tx=" + data.getTransactionID());
-            } else {
-                System.out.println("[QUEUE INSERT TRY] Attempting insert. tx=" + data.getTransactionID() +" queueSize=" + queue.size());
+            long remaining;
+            while(paused) {
+                remaining = deadline - System.nanoTime();
+                if(remaining <= 0)
+                    return false;
+                resumed.awaitNanos(remaining);
             }
-            // Blocking insert
-            this.queue.put(data);
-            // Log AFTER successful insert
-            System.out.println("[QUEUE INSERTED] Inserted tx=" + data.getTransactionID() +" newQueueSize=" + queue.size());
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            System.out.println("[QUEUE ERROR] Interrupted when inserting tx=" + data.getTransactionID());
+            return true;
+        } finally {
+            pauseLock.unlock();
+        }
+    }
+
+    // pauses admission and schedules the fallback heal check after the current wait time
+    protected void pause() {
+        int epoch;
+        pauseLock.lock();
+        try {
+            if(paused)
+                return;
+            paused = true;
+            pausedAt = System.nanoTime();
+            epoch = pauseEpoch.incrementAndGet();
+        } finally {
+            pauseLock.unlock();
         }
+        pauses.increment();
+        log.warn("BACKPRESSURE -> handler {} paused, waiting for healing...", getHandlerID());
+        scheduleHeal(epoch);
     }
 
+    private void scheduleHeal(int epoch) {
+        CompletableFuture.delayedExecutor(waitTime.get(), TimeUnit.MILLISECONDS).execute(() -> heal(epoch));
+    }
+
+    // fallback for a worker that is not taking (all permits busy): resumes once the queue is back under its threshold,
+    // otherwise doubles the wait (up to MAX_WAIT) and checks again
+    private void heal(int epoch) {
+        if(!paused || pauseEpoch.get() != epoch)
+            return;     // already resumed by the worker
+        healAttempts.increment();
+        if(!sustained()) {
+            waitTime.set(Math.min(MAX_WAIT, waitTime.get() * 2));
+            scheduleHeal(epoch);
+            return;
+        }
+        resume("heal check");
+    }
+
+    private void resume(String reason) {
+        pauseLock.lock();
+        try {
+            if(!paused)
+                return;
+            paused = false;
+            waitTime.set(INITIAL_WAIT);
+            resumed.signalAll();
+        } finally {
+            pauseLock.unlock();
+        }
+        healSuccesses.increment();
+        pausedTime.record(System.nanoTime() - pausedAt, TimeUnit.NANOSECONDS);
+        log.info("HEALING SUCCESS → handler {} resumed ({})", getHandlerID(), reason);
+    }
+
+    public abstract String getHandlerID();
+
     protected abstract boolean backpressure();
 
     protected abstract boolean sustained();
@@ -0,0 +1,119 @@
+package ticketing.pipeline_reactive.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import ticketing.pipeline_reactive.model.AbstractQueue;
+import ticketing.pipeline_reactive.model.Handler;
+
+// moves in-flight permits between the handlers, the operations complete on timers so the permits and not the executor
+// threads bound a stage: a handler whose queue fills past scale-up-burst gains a step of permits, one that stays under
+// scale-down-burst for cooldown-ticks gives a step back, and once total-permits are handed out the bottleneck (fullest
+// queue x longest permit hold) takes them from the least loaded handler; paused handlers are left alone, their backlog
+// is being drained and admission is closed
+@Service
+public class StageScaler {
+    @Autowired private List<Handler> handlers;
+    @Autowired private Environment env;
+
+    @Value("${scaler.total-permits:192}") private int totalPermits;
+    @Value("${scaler.scale-up-burst:0.6}") private double scaleUpBurst;
+    @Value("${scaler.scale-down-burst:0.2}") private double scaleDownBurst;
+    @Value("${scaler.cooldown-ticks:4}") private int cooldownTicks;
+    @Value("${scaler.step:8}") private int step;
+
+    private final Logger log = LoggerFactory.getLogger(StageScaler.class);
+    private final List<Stage> stages = new ArrayList<>();
+
+    @PostConstruct
+    public void init() {
+        for(Handler handler : handlers) {
+            String prefix = "handler." + handler.getHandlerID() + ".";
+            stages.add(new Stage((AbstractQueue) handler,
+                    env.getProperty(prefix + "min-concurrency", Integer.class, 8),
+                    env.getProperty(prefix + "max-concurrency", Integer.class, 256)));
+        }
+    }
+
+    @Scheduled(fixedRateString = "${scaler.interval-ms:500}")
+    public void rebalance() {
+        for(Stage stage : stages) {
+            if(stage.queue.isPaused()) {
+                stage.calm = 0;
+                continue;
+            }
+            stage.calm = stage.queue.burstFactor() <= scaleDownBurst ? stage.calm + 1 : 0;
+            if(stage.calm >= cooldownTicks && stage.size() > stage.min) {
+                shrink(stage, step);
+                stage.calm = 0;
+            }
+        }
+        List<Stage> hot = stages.stream()
+                .filter(stage -> !stage.queue.isPaused() && stage.queue.burstFactor() >= scaleUpBurst && stage.size() < stage.max)
+                .sorted(Comparator.comparingDouble(Stage::score).reversed())
+                .toList();
+        for(Stage stage : hot) {
+            int wanted = Math.min(step, stage.max - stage.size());
+            int free = Math.min(wanted, totalPermits - used());
+            if(free > 0) {
+                grow(stage, free);
+                continue;
+            }
+            // budget spent: move permits over from the least loaded handler that is neither congested nor paused
+            stages.stream()
+                    .filter(donor -> donor != stage && !donor.queue.isPaused() && donor.size() > donor.min
+                            && donor.queue.burstFactor() < scaleUpBurst)
+                    .min(Comparator.comparingDouble(Stage::score))
+                    .ifPresent(donor -> grow(stage, shrink(donor, Math.min(wanted, donor.size() - donor.min))));
+        }
+    }
+
+    private int used() {return stages.stream().mapToInt(Stage::size).sum();}
+
+    private void grow(Stage stage, int permits) {
+        if(permits <= 0)
+            return;
+        for(int i = 0; i < permits; i++)
+            stage.queue.growConcurrency();
+        log.info("Handler {} concurrency raised to {} (burst {}, service {} ms)", stage.queue.getHandlerID(), stage.size(),
+                String.format("%.2f", stage.queue.burstFactor()), String.format("%.1f", stage.queue.getServiceMs()));
+    }
+
+    // only free permits can be withdrawn, returns how many were
+    private int shrink(Stage stage, int permits) {
+        int taken = 0, limit = Math.min(permits, stage.size() - stage.min);
+        while(taken < limit && stage.queue.shrinkConcurrency())
+            taken++;
+        if(taken > 0)
+            log.info("Handler {} concurrency lowered to {}", stage.queue.getHandlerID(), stage.size());
+        return taken;
+    }
+
+    private static final class Stage {
+        private final AbstractQueue queue;
+        private final int min, max;
+        // consecutive ticks under scale-down-burst, the hysteresis against shrinking on a momentary lull
+        private int calm;
+
+        Stage(AbstractQueue queue, int min, int max) {
+            this.queue = queue;
+            this.min = min;
+            this.max = Math.max(min, max);
+        }
+
+        int size() {return queue.getConcurrency();}
+
+        // backlog weighted by how long an operation holds its permit, the highest score is the bottleneck
+        double score() {return queue.burstFactor() * Math.max(1, queue.getServiceMs());}
+    }
+}
@@ -1,23 +1,152 @@
 package ticketing.pipeline_reactive.service;
 
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import ticketing.pipeline_reactive.data.Data;
+import ticketing.pipeline_reactive.data.enums.AccountType;
 
+// deficit round robin between the account types (a weight of n serves up to n requests of that type per round), and
+// plain round robin between the customers of a type, so neither a flood of BASIC nor one busy customer starves the rest
 @Service
 public class TenantQueue {
-    private final LinkedBlockingQueue<Data> tenantQueue = new LinkedBlockingQueue<>();
+    // requests without a name (or an empty one) take their turns together under this key, ArrayDeque holds no nulls
+    private static final String NO_CUSTOMER = "";
 
-    public boolean insert(Data data) {return tenantQueue.offer(data);}
+    @Autowired private MeterRegistry registry;
 
-    public Data extract() {
+    @Value("${tenant.weight.basic:1}") private int basicWeight;
+    @Value("${tenant.weight.premium:4}") private int premiumWeight;
+    // requests held across all tenants, beyond it new ones are shed
+    @Value("${tenant.max-depth:10000}") private int maxDepth;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Map<AccountType, Tenant> tenants = new EnumMap<>(AccountType.class);
+    // tenants with queued requests, the head one is being served in the current round
+    private final ArrayDeque<Tenant> active = new ArrayDeque<>();
+    private int size;
+
+    @PostConstruct
+    public void init() {
+        tenants.put(AccountType.BASIC, new Tenant(AccountType.BASIC, basicWeight));
+        tenants.put(AccountType.PREMIUM, new Tenant(AccountType.PREMIUM, premiumWeight));
+    }
+
+    public boolean insert(Data data) {return insertAll(List.of(data)) == 1;}
+
+    // enqueues under one lock acquisition, in order until the depth limit, returns how many were taken
+    public int insertAll(List<Data> batch) {
+        lock.lock();
         try {
-            return tenantQueue.take();
-        } catch(InterruptedException e) {
-            Thread.currentThread().interrupt();
-            return null;
+            int taken = 0;
+            for(Data data : batch) {
+                if(size == maxDepth)
+                    break;
+                Tenant tenant = tenants.get(data.getAccountType());
+                boolean idle = tenant.isEmpty();
+                tenant.add(new Entry(data, System.nanoTime()));
+                // only once the request is really queued, an empty tenant in active would be served a null entry
+                if(idle)
+                    active.addLast(tenant);
+                size++;
+                taken++;
+            }
+            if(taken > 0)
+                notEmpty.signal();
+            return taken;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // blocks until a request is queued, an interrupt is the caller's signal to stop and is passed on to it
+    public Data extract() throws InterruptedException {
+        Entry entry;
+        Tenant tenant;
+        lock.lockInterruptibly();
+        try {
+            while(size == 0)
+                notEmpty.await();
+            tenant = active.peekFirst();
+            if(!tenant.served) {
+                // the tenant's turn starts, it is credited its quantum once per round
+                tenant.deficit += tenant.weight;
+                tenant.served = true;
+            }
+            entry = tenant.poll();
+            tenant.deficit--;
+            size--;
+            if(tenant.isEmpty()) {
+                // an idle tenant does not bank credit for later
+                tenant.deficit = 0;
+                tenant.served = false;
+                active.pollFirst();
+            } else if(tenant.deficit <= 0) {
+                tenant.served = false;
+                active.addLast(active.pollFirst());
+            }
+        } finally {
+            lock.unlock();
+        }
+        tenant.waitTime.record(System.nanoTime() - entry.enqueuedAt, TimeUnit.NANOSECONDS);
+        return entry.data;
+    }
+
+    private record Entry(Data data, long enqueuedAt) {}
+
+    private final class Tenant {
+        private final int weight;
+        private final Timer waitTime;
+        // per customer FIFO, customers take turns in the order they became non-empty
+        private final Map<String, ArrayDeque<Entry>> customers = new HashMap<>();
+        private final ArrayDeque<String> turns = new ArrayDeque<>();
+        private int deficit, depth;
+        private boolean served;
+
+        Tenant(AccountType type, int weight) {
+            this.weight = Math.max(1, weight);
+            String tag = type.name().toLowerCase();
+            this.waitTime = Timer.builder("tenant.queue.wait").tag("account", tag).publishPercentiles(0.5, 0.9, 0.99).register(registry);
+            Gauge.builder("tenant.queue.depth", this, t -> t.depth).tag("account", tag).register(registry);
+        }
+
+        boolean isEmpty() {return depth == 0;}
+
+        void add(Entry entry) {
+            String customer = Objects.requireNonNullElse(entry.data.getCustomer(), NO_CUSTOMER);
+            ArrayDeque<Entry> queue = customers.computeIfAbsent(customer, c -> new ArrayDeque<>());
+            if(queue.isEmpty())
+                turns.addLast(customer);
+            queue.addLast(entry);
+            depth++;
+        }
+
+        Entry poll() {
+            String customer = turns.pollFirst();
+            ArrayDeque<Entry> queue = customers.get(customer);
+            Entry entry = queue.pollFirst();
+            if(queue.isEmpty())
+                customers.remove(customer);
+            else
+                turns.addLast(customer);
+            depth--;
+            return entry;
         }
     }
 }
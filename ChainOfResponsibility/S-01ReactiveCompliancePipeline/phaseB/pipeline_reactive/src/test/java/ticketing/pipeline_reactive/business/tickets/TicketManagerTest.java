@@ -0,0 +1,70 @@
+package ticketing.pipeline_reactive.business.tickets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ticketing.pipeline_reactive.data.Data;
+import ticketing.pipeline_reactive.data.enums.AccountType;
+
+class TicketManagerTest {
+
+	@Test
+	void aTokenWithoutAFreeLeaseIsNotSpent() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		// three tokens and no refill to speak of, two leases
+		TicketManager tickets = manager(registry, 3, 2);
+		List<String> first = tickets.getTickets(AccountType.BASIC, 3);
+		assertEquals(2, first.size());
+		assertEquals(1, rejected(registry, "capacity"));
+		assertEquals(1, tokens(registry));
+
+		tickets.release(leased(first.get(0)));
+		assertEquals(1, tickets.getTickets(AccountType.BASIC, 2).size());
+		assertEquals(1, rejected(registry, "rate"));
+	}
+
+	@Test
+	void aFreeLeaseIsNotGrantedPastTheRate() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		TicketManager tickets = manager(registry, 1, 2);
+		tickets.release(leased(tickets.getBasicTicket()));
+		assertNull(tickets.getBasicTicket());
+		assertEquals(1, rejected(registry, "rate"));
+		assertEquals(0, rejected(registry, "capacity"));
+	}
+
+	private static TicketManager manager(SimpleMeterRegistry registry, long tokens, int poolSize) {
+		TicketManager manager = new TicketManager();
+		ReflectionTestUtils.setField(manager, "ticketGenerator", new TicketGenerator());
+		ReflectionTestUtils.setField(manager, "registry", registry);
+		for(String type : List.of("basic", "premium")) {
+			ReflectionTestUtils.setField(manager, type + "Capacity", tokens);
+			ReflectionTestUtils.setField(manager, type + "Rate", 0.001);
+			ReflectionTestUtils.setField(manager, type + "Initial", tokens);
+			ReflectionTestUtils.setField(manager, type + "PoolSize", poolSize);
+		}
+		ReflectionTestUtils.setField(manager, "leaseMs", 60_000L);
+		manager.init();
+		return manager;
+	}
+
+	private static Data leased(String ticket) {
+		Data data = new Data("c", 10, "BASIC");
+		data.setTicket(ticket);
+		return data;
+	}
+
+	private static double rejected(SimpleMeterRegistry registry, String reason) {
+		return registry.get("tickets.rejected").tag("account", "basic").tag("reason", reason).functionCounter().count();
+	}
+
+	private static double tokens(SimpleMeterRegistry registry) {
+		return registry.get("tickets.tokens").tag("account", "basic").gauge().value();
+	}
+}
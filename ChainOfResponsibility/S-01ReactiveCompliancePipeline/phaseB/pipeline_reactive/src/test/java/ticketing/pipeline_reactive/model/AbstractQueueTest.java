@@ -0,0 +1,75 @@
+package ticketing.pipeline_reactive.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ticketing.pipeline_reactive.business.tickets.TicketManager;
+import ticketing.pipeline_reactive.data.Data;
+
+class AbstractQueueTest {
+
+	@Test
+	void dropOldestQueuesWhilePausedWithRoomLeft() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		AbstractQueue handler = handler("drop-oldest", registry);
+		Data first = data("first");
+		assertTrue(handler.insertIntoQueue(first));
+		handler.setPaused(true);
+		Data second = data("second");
+		assertTrue(handler.insertIntoQueue(second));
+		assertEquals(List.of(first, second), new ArrayList<>(handler.getQueue()));
+		assertEquals(0, dropped(registry));
+	}
+
+	@Test
+	void dropOldestGivesUpTheOldestOnlyWhenFull() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		AbstractQueue handler = handler("drop-oldest", registry);
+		handler.setPaused(true);
+		int size = handler.getQueue().remainingCapacity();
+		for(int i = 0; i < size; i++)
+			assertTrue(handler.insertIntoQueue(data("c" + i)));
+		assertEquals(0, dropped(registry));
+		Data late = data("late");
+		assertTrue(handler.insertIntoQueue(late));
+		assertEquals(1, dropped(registry));
+		assertEquals(size, handler.getQueue().size());
+		assertEquals("c1", handler.getQueue().peek().getCustomer());
+		assertTrue(handler.getQueue().contains(late));
+	}
+
+	private static AbstractQueue handler(String overflow, SimpleMeterRegistry registry) {
+		AbstractQueue handler = new AbstractQueue() {
+			@Override
+			public String getHandlerID() {return "test";}
+
+			@Override
+			protected boolean backpressure() {return false;}
+
+			@Override
+			protected boolean sustained() {return true;}
+		};
+		ReflectionTestUtils.setField(handler, "env", new MockEnvironment().withProperty("handler.test.overflow", overflow));
+		ReflectionTestUtils.setField(handler, "registry", registry);
+		// nothing here holds a ticket, release is a no-op
+		ReflectionTestUtils.setField(handler, "ticketManager", new TicketManager());
+		handler.initStage();
+		return handler;
+	}
+
+	private static double dropped(SimpleMeterRegistry registry) {
+		return registry.get("handler.overflow").tag("outcome", "dropped").counter().count();
+	}
+
+	private static Data data(String customer) {
+		return new Data(customer, 10, "BASIC");
+	}
+}
@@ -0,0 +1,141 @@
+package ticketing.pipeline_reactive.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ticketing.pipeline_reactive.data.Data;
+
+class TenantQueueTest {
+
+	@Test
+	void premiumGetsItsWeightPerRound() throws InterruptedException {
+		TenantQueue queue = queue(1, 4, 100);
+		for(int i = 0; i < 10; i++)
+			queue.insert(data("b" + i, "BASIC"));
+		for(int i = 0; i < 20; i++)
+			queue.insert(data("p" + i, "PREMIUM"));
+		// BASIC became non-empty first and opens every round with its single request
+		assertEquals("BPPPPBPPPP", types(queue, 10));
+		assertEquals("BPPPPBPPPPBPPPPB", types(queue, 16));
+		assertEquals("BBBB", types(queue, 4));
+	}
+
+	@Test
+	void customersOfATenantTakeTurns() throws InterruptedException {
+		TenantQueue queue = queue(1, 4, 100);
+		for(String customer : List.of("alice", "alice", "alice", "bob", "bob", "carol"))
+			queue.insert(data(customer, "BASIC"));
+		List<String> served = new ArrayList<>();
+		for(int i = 0; i < 6; i++)
+			served.add(queue.extract().getCustomer());
+		assertEquals(List.of("alice", "bob", "carol", "alice", "bob", "alice"), served);
+	}
+
+	@Test
+	void anIdleTenantDoesNotBankCredit() throws InterruptedException {
+		TenantQueue queue = queue(1, 4, 100);
+		queue.insert(data("p", "PREMIUM"));
+		queue.extract();    // PREMIUM drained after one of its four, the rest of its quantum is dropped
+		for(int i = 0; i < 3; i++)
+			queue.insert(data("b" + i, "BASIC"));
+		for(int i = 0; i < 6; i++)
+			queue.insert(data("p" + i, "PREMIUM"));
+		assertEquals("BPPPPBPPB", types(queue, 9));
+	}
+
+	@Test
+	@Timeout(5)
+	void requestsWithoutACustomerShareOneTurn() throws InterruptedException {
+		TenantQueue queue = queue(1, 4, 100);
+		assertTrue(queue.insert(data(null, "BASIC")));
+		queue.insert(data("alice", "BASIC"));
+		assertTrue(queue.insert(data(null, "BASIC")));
+		List<String> served = new ArrayList<>();
+		for(int i = 0; i < 3; i++)
+			served.add(queue.extract().getCustomer());
+		assertEquals(Arrays.asList(null, "alice", null), served);
+		// the tenant was left consistent, a later nameless request of another type is served as well
+		assertTrue(queue.insert(data(null, "PREMIUM")));
+		assertEquals("PREMIUM", queue.extract().getAccountType().name());
+	}
+
+	@Test
+	void requestsPastTheDepthLimitAreNotTaken() {
+		TenantQueue queue = queue(1, 4, 3);
+		List<Data> batch = new ArrayList<>();
+		for(int i = 0; i < 5; i++)
+			batch.add(data("c" + i, i % 2 == 0 ? "BASIC" : "PREMIUM"));
+		assertEquals(3, queue.insertAll(batch));
+		assertFalse(queue.insert(data("late", "PREMIUM")));
+	}
+
+	@Test
+	@Timeout(5)
+	void extractWaitsForAnInsert() throws InterruptedException {
+		TenantQueue queue = queue(1, 4, 100);
+		Thread producer = new Thread(() -> {
+			try {
+				Thread.sleep(20);
+			} catch(InterruptedException e) {
+				return;
+			}
+			queue.insert(data("late", "BASIC"));
+		});
+		producer.start();
+		assertEquals("late", queue.extract().getCustomer());
+		producer.join();
+	}
+
+	@Test
+	@Timeout(5)
+	void extractPassesAnInterruptOn() throws InterruptedException {
+		TenantQueue queue = queue(1, 4, 100);
+		AtomicReference<Throwable> thrown = new AtomicReference<>();
+		Thread consumer = new Thread(() -> {
+			try {
+				queue.extract();
+			} catch(InterruptedException e) {
+				thrown.set(e);
+			}
+		});
+		consumer.start();
+		TimeUnit.MILLISECONDS.sleep(20);
+		consumer.interrupt();
+		consumer.join();
+		assertTrue(thrown.get() instanceof InterruptedException);
+	}
+
+	private static TenantQueue queue(int basicWeight, int premiumWeight, int maxDepth) {
+		TenantQueue queue = new TenantQueue();
+		ReflectionTestUtils.setField(queue, "registry", new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(queue, "basicWeight", basicWeight);
+		ReflectionTestUtils.setField(queue, "premiumWeight", premiumWeight);
+		ReflectionTestUtils.setField(queue, "maxDepth", maxDepth);
+		queue.init();
+		return queue;
+	}
+
+	private static Data data(String customer, String accountType) {
+		return new Data(customer, 10, accountType);
+	}
+
+	// first letter of the account type of the next n requests served
+	private static String types(TenantQueue queue, int n) throws InterruptedException {
+		StringBuilder served = new StringBuilder();
+		for(int i = 0; i < n; i++)
+			served.append(queue.extract().getAccountType().name().charAt(0));
+		return served.toString();
+	}
+}